@@ -0,0 +1,255 @@
+package ru.yandex.practicum.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.FriendStatus;
+import ru.yandex.practicum.model.Genre;
+import ru.yandex.practicum.model.MPA;
+import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.service.DictionaryService;
+import ru.yandex.practicum.storage.film.FilmCache;
+import ru.yandex.practicum.storage.film.FilmDbStorage;
+import ru.yandex.practicum.storage.film.FilmStorage;
+import ru.yandex.practicum.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.storage.film.LikeWriteBehindBuffer;
+import ru.yandex.practicum.storage.genre.GenreStorage;
+import ru.yandex.practicum.storage.mpa.MPAStorage;
+import ru.yandex.practicum.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.storage.user.UserDbStorage;
+import ru.yandex.practicum.storage.user.UserStorage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Тестовые данные бенчмарков.
+ * На каждые 10 лайков приходится один фильм и один пользователь, каждый пользователь
+ * ставит 10 лайков и имеет до FRIENDS_PER_USER друзей. Данные генерируются
+ * с фиксированным зерном, поэтому одинаковы для хранилищ в базе и в памяти.
+ */
+public class BenchmarkDataset {
+    private static final int LIKES_PER_USER = 10;
+    private static final int FRIENDS_PER_USER = 20;
+    private static final int GENRES = 6;
+    private static final int RATINGS = 5;
+    private static final int BATCH_SIZE = 10_000;
+
+    private final int filmCount;
+    private final int userCount;
+    private final int[][] likes;
+    private final int[][] friends;
+
+    public BenchmarkDataset(int likeCount) {
+        this.filmCount = Math.max(likeCount / LIKES_PER_USER, 100);
+        this.userCount = Math.max(likeCount / LIKES_PER_USER, 100);
+        Random random = new Random(42);
+        likes = new int[userCount + 1][];
+        friends = new int[userCount + 1][];
+        for (int userId = 1; userId <= userCount; userId++) {
+            likes[userId] = distinct(random, LIKES_PER_USER, filmCount, 0);
+            friends[userId] = distinct(random, Math.min(FRIENDS_PER_USER, userCount - 1), userCount, userId);
+        }
+    }
+
+    /**
+     * Данные с заданным количеством пользователей
+     */
+    public static BenchmarkDataset ofUsers(int userCount) {
+        return new BenchmarkDataset(userCount * LIKES_PER_USER);
+    }
+
+    public int getFilmCount() {
+        return filmCount;
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * Id пользователя без лайков и друзей, создаваемого для бенчмарков записи
+     */
+    public int getSpareUserId() {
+        return userCount + 1;
+    }
+
+    /**
+     * Хранилище фильмов в H2 в памяти с загруженными данными
+     */
+    public FilmStorage createFilmDbStorage(JdbcTemplate jdbcTemplate) {
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(jdbcTemplate.getDataSource());
+        FilmCache filmCache = new FilmCache(10000, 300);
+        LikeWriteBehindBuffer likeBuffer = new LikeWriteBehindBuffer(jdbcTemplate, transactionManager,
+                filmCache, false, 500, 1000, 10000);
+        FilmDbStorage storage = new FilmDbStorage(jdbcTemplate, transactionManager, likeBuffer,
+                filmCache, createDictionary(jdbcTemplate), 500);
+        storage.initIndexes();
+        return storage;
+    }
+
+    /**
+     * Хранилище пользователей в H2 в памяти с загруженными данными
+     */
+    public UserStorage createUserDbStorage(JdbcTemplate jdbcTemplate) {
+        UserDbStorage storage = new UserDbStorage(jdbcTemplate);
+        storage.initIndexes();
+        return storage;
+    }
+
+    /**
+     * Хранилище фильмов в памяти с загруженными данными.
+     * Справочники жанров и рейтингов читаются из пустой базы H2
+     */
+    public FilmStorage createFilmMemoryStorage() {
+        InMemoryUserStorage userStorage = createUserMemoryStorage();
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(userStorage, createDictionary(createSchema()));
+        for (int filmId = 1; filmId <= filmCount; filmId++) {
+            storage.add(giveFilm(filmId));
+        }
+        for (int userId = 1; userId <= userCount; userId++) {
+            for (int filmId : likes[userId]) {
+                storage.putLike(giveFilm(filmId), userId);
+            }
+        }
+        return storage;
+    }
+
+    /**
+     * Хранилище пользователей в памяти с загруженными данными
+     */
+    public InMemoryUserStorage createUserMemoryStorage() {
+        InMemoryUserStorage storage = new InMemoryUserStorage();
+        for (int userId = 1; userId <= userCount + 1; userId++) {
+            storage.create(giveUser(userId));
+        }
+        for (int userId = 1; userId <= userCount; userId++) {
+            for (int friendId : friends[userId]) {
+                storage.addFriend(giveUser(userId), giveUser(friendId));
+            }
+        }
+        return storage;
+    }
+
+    /**
+     * Создание базы H2 в памяти с пулом соединений, как в приложении,
+     * по schema.sql и data.sql и загрузка в неё данных
+     */
+    public JdbcTemplate createDatabase() {
+        JdbcTemplate jdbcTemplate = createSchema();
+
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int userId = 1; userId <= userCount + 1; userId++) {
+            User user = giveUser(userId);
+            rows.add(new Object[] {user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday()});
+            flushIfFull(jdbcTemplate, "INSERT INTO USERS(USER_ID, USER_EMAIL, USER_LOGIN, USER_NAME, BIRTHDAY) " +
+                    "VALUES (?, ?, ?, ?, ?)", rows, userId == userCount + 1);
+        }
+        for (int filmId = 1; filmId <= filmCount; filmId++) {
+            Film film = giveFilm(filmId);
+            rows.add(new Object[] {film.getId(), film.getName(), film.getDescription(),
+                    film.getReleaseDate(), film.getDuration()});
+            flushIfFull(jdbcTemplate, "INSERT INTO FILMS(FILM_ID, FILM_NAME, DESCRIPTION, RELEASE_DATE, DURATION) " +
+                    "VALUES (?, ?, ?, ?, ?)", rows, filmId == filmCount);
+        }
+        for (int filmId = 1; filmId <= filmCount; filmId++) {
+            Film film = giveFilm(filmId);
+            rows.add(new Object[] {filmId, film.getMpa().getId()});
+            flushIfFull(jdbcTemplate, "INSERT INTO FILM_MPA(FILM_ID, MPA_ID) VALUES (?, ?)", rows, filmId == filmCount);
+        }
+        for (int filmId = 1; filmId <= filmCount; filmId++) {
+            for (Genre genre : giveFilm(filmId).getGenres()) {
+                rows.add(new Object[] {filmId, genre.getId()});
+            }
+            flushIfFull(jdbcTemplate, "INSERT INTO FILM_GENRES(FILM_ID, GENRE_ID) VALUES (?, ?)", rows,
+                    filmId == filmCount);
+        }
+        for (int userId = 1; userId <= userCount; userId++) {
+            for (int filmId : likes[userId]) {
+                rows.add(new Object[] {filmId, userId});
+            }
+            flushIfFull(jdbcTemplate, "INSERT INTO LIKES(FILM_ID, USER_ID) VALUES (?, ?)", rows, userId == userCount);
+        }
+        for (int userId = 1; userId <= userCount; userId++) {
+            for (int friendId : friends[userId]) {
+                rows.add(new Object[] {userId, friendId, FriendStatus.НЕПОДТВЕРЖДЕННАЯ.toString()});
+            }
+            flushIfFull(jdbcTemplate, "INSERT INTO FRIENDS(USER_ID, FRIEND_ID, FRIEND_STATUS) VALUES (?, ?, ?)",
+                    rows, userId == userCount);
+        }
+        jdbcTemplate.update("UPDATE FILMS F SET LIKES_COUNT = (SELECT COUNT(*) FROM LIKES L WHERE L.FILM_ID = F.FILM_ID)");
+        return jdbcTemplate;
+    }
+
+    /**
+     * Создание пустой базы H2 в памяти по schema.sql и data.sql
+     */
+    private static JdbcTemplate createSchema() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"));
+        populator.setSqlScriptEncoding(StandardCharsets.UTF_8.name());
+        populator.execute(dataSource);
+        return new JdbcTemplate(dataSource);
+    }
+
+    private static DictionaryService createDictionary(JdbcTemplate jdbcTemplate) {
+        DictionaryService dictionary = new DictionaryService(new GenreStorage(jdbcTemplate), new MPAStorage(jdbcTemplate));
+        dictionary.load();
+        return dictionary;
+    }
+
+    private static void flushIfFull(JdbcTemplate jdbcTemplate, String sqlQuery, List<Object[]> rows, boolean last) {
+        if (rows.size() >= BATCH_SIZE || (last && !rows.isEmpty())) {
+            jdbcTemplate.batchUpdate(sqlQuery, rows);
+            rows.clear();
+        }
+    }
+
+    private static Film giveFilm(int filmId) {
+        Film film = new Film();
+        film.setId(filmId);
+        film.setName("Фильм " + filmId);
+        film.setDescription("Описание фильма " + filmId);
+        film.setReleaseDate(LocalDate.of(1950, 1, 1).plusDays(filmId % 25000));
+        film.setDuration(60 + filmId % 120);
+        film.setMpa(new MPA(1 + filmId % RATINGS, null));
+        film.getGenres().add(new Genre(1 + filmId % GENRES, null));
+        film.getGenres().add(new Genre(1 + (filmId / GENRES) % GENRES, null));
+        return film;
+    }
+
+    private static User giveUser(int userId) {
+        User user = new User();
+        user.setId(userId);
+        user.setEmail("user" + userId + "@mail.ru");
+        user.setLogin("user" + userId);
+        user.setName("Пользователь " + userId);
+        user.setBirthday(LocalDate.of(1970, 1, 1).plusDays(userId % 15000));
+        return user;
+    }
+
+    /**
+     * Выбор count различных чисел от 1 до bound, кроме exclude
+     */
+    private static int[] distinct(Random random, int count, int bound, int exclude) {
+        Set<Integer> values = new HashSet<>();
+        while (values.size() < count) {
+            int value = 1 + random.nextInt(bound);
+            if (value != exclude) {
+                values.add(value);
+            }
+        }
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
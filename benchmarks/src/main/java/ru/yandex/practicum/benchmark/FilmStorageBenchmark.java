@@ -0,0 +1,117 @@
+package ru.yandex.practicum.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.FilmFilter;
+import ru.yandex.practicum.storage.film.FilmStorage;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк операций хранилищ фильмов в базе данных и в памяти
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmStorageBenchmark {
+    @Param({"db", "memory"})
+    private String storage;
+    @Param({"10000"})
+    private int likes;
+
+    private FilmStorage films;
+    private int filmCount;
+    private int userCount;
+    private int spareUserId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDataset dataset = new BenchmarkDataset(likes);
+        films = "db".equals(storage)
+                ? dataset.createFilmDbStorage(dataset.createDatabase())
+                : dataset.createFilmMemoryStorage();
+        filmCount = dataset.getFilmCount();
+        userCount = dataset.getUserCount();
+        spareUserId = dataset.getSpareUserId();
+    }
+
+    @Benchmark
+    public List<Film> findAll() {
+        return films.findAll();
+    }
+
+    @Benchmark
+    public List<Film> findPage() {
+        return films.findPage(randomFilmId(), 100);
+    }
+
+    @Benchmark
+    public List<Film> findByFilter() {
+        FilmFilter filter = new FilmFilter();
+        filter.setGenre(Set.of(1 + ThreadLocalRandom.current().nextInt(6)));
+        filter.setMpa(Set.of(1, 2));
+        filter.setYearFrom(1960 + ThreadLocalRandom.current().nextInt(20));
+        filter.setYearTo(filter.getYearFrom() + 10);
+        filter.setMaxDuration(120L);
+        return films.findByFilter(filter, 0, 100);
+    }
+
+    @Benchmark
+    public List<Film> findBest() {
+        return films.findBest(10);
+    }
+
+    @Benchmark
+    public List<Film> findRecommendations() {
+        return films.findRecommendations(1 + ThreadLocalRandom.current().nextInt(userCount), 10);
+    }
+
+    @Benchmark
+    public List<Film> findSimilar() {
+        return films.findSimilar(films.findFilmById(randomFilmId()), 10);
+    }
+
+    @Benchmark
+    public List<Film> search() {
+        return films.search("фильм " + randomFilmId(), 10);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public List<Film> autocomplete() {
+        return films.autocomplete("фильм " + randomFilmId() / 10, 10);
+    }
+
+    @Benchmark
+    public Film findFilmById() {
+        return films.findFilmById(randomFilmId());
+    }
+
+    @Benchmark
+    public Film putAndDeleteLike() {
+        int filmId = randomFilmId();
+        films.putLike(films.findFilmById(filmId), spareUserId);
+        return films.deleteLike(filmId, spareUserId);
+    }
+
+    private int randomFilmId() {
+        return 1 + ThreadLocalRandom.current().nextInt(filmCount);
+    }
+}
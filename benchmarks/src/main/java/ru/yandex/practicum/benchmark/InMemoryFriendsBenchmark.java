@@ -0,0 +1,71 @@
+package ru.yandex.practicum.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.storage.user.InMemoryUserStorage;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк операций с друзьями в хранилище пользователей в памяти на миллионе пользователей.
+ * Время операций не должно зависеть от общего числа пользователей
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class InMemoryFriendsBenchmark {
+    @Param({"1000000"})
+    private int users;
+
+    private InMemoryUserStorage storage;
+    private User spareUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDataset dataset = BenchmarkDataset.ofUsers(users);
+        storage = dataset.createUserMemoryStorage();
+        spareUser = storage.findUserById(dataset.getSpareUserId());
+    }
+
+    @Benchmark
+    public List<User> getFriends() {
+        return storage.getFriends(storage.findUserById(randomUserId()));
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        return storage.getCommonFriends(storage.findUserById(randomUserId()), storage.findUserById(randomUserId()));
+    }
+
+    @Benchmark
+    public List<User> getSuggestions() {
+        return storage.getSuggestions(storage.findUserById(randomUserId()), 10);
+    }
+
+    @Benchmark
+    public User addAndDeleteFriend() {
+        User friend = storage.findUserById(randomUserId());
+        storage.addFriend(spareUser, friend);
+        return storage.deleteFriend(spareUser, friend);
+    }
+
+    private int randomUserId() {
+        return 1 + ThreadLocalRandom.current().nextInt(users);
+    }
+}
@@ -0,0 +1,97 @@
+package ru.yandex.practicum.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.storage.user.UserStorage;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк операций хранилищ пользователей в базе данных и в памяти
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserStorageBenchmark {
+    @Param({"db", "memory"})
+    private String storage;
+    @Param({"10000"})
+    private int likes;
+
+    private UserStorage users;
+    private int userCount;
+    private User spareUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDataset dataset = new BenchmarkDataset(likes);
+        users = "db".equals(storage)
+                ? dataset.createUserDbStorage(dataset.createDatabase())
+                : dataset.createUserMemoryStorage();
+        userCount = dataset.getUserCount();
+        spareUser = users.findUserById(dataset.getSpareUserId());
+    }
+
+    @Benchmark
+    public List<User> findAll() {
+        return users.findAll();
+    }
+
+    @Benchmark
+    public List<User> findPage() {
+        return users.findPage(randomUserId(), 100);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public List<User> autocomplete() {
+        return users.autocomplete("user" + randomUserId() / 100, 10);
+    }
+
+    @Benchmark
+    public User findUserById() {
+        return users.findUserById(randomUserId());
+    }
+
+    @Benchmark
+    public List<User> getFriends() {
+        return users.getFriends(users.findUserById(randomUserId()));
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        return users.getCommonFriends(users.findUserById(randomUserId()), users.findUserById(randomUserId()));
+    }
+
+    @Benchmark
+    public List<User> getSuggestions() {
+        return users.getSuggestions(users.findUserById(randomUserId()), 10);
+    }
+
+    @Benchmark
+    public User addAndDeleteFriend() {
+        User friend = users.findUserById(randomUserId());
+        users.addFriend(spareUser, friend);
+        return users.deleteFriend(spareUser, friend);
+    }
+
+    private int randomUserId() {
+        return 1 + ThreadLocalRandom.current().nextInt(userCount);
+    }
+}
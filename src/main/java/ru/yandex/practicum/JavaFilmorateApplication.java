@@ -2,11 +2,13 @@ package ru.yandex.practicum;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Приложение Filmorate
  */
 @SpringBootApplication
+@EnableScheduling
 public class JavaFilmorateApplication {
 
     public static void main(String[] args) {
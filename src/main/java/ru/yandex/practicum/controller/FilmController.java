@@ -1,34 +1,110 @@
 package ru.yandex.practicum.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.exception.ValidationException;
+import ru.yandex.practicum.model.CacheStats;
 import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.FilmBatchResult;
+import ru.yandex.practicum.model.FilmFilter;
+import ru.yandex.practicum.storage.PrefixIndex;
+import ru.yandex.practicum.storage.film.FilmCache;
+import ru.yandex.practicum.storage.film.FilmSimilarityIndex;
 import ru.yandex.practicum.storage.film.FilmStorage;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Контроллер фильмов
  */
 @RestController
 public class FilmController {
-    @Qualifier("filmDbStorage")
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 10000;
+    private static final int DEFAULT_SIMILAR = 10;
+    private static final int DEFAULT_SEARCH_RESULTS = 10;
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     private final FilmStorage storage;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final FilmCache filmCache;
 
     @Autowired
-    public FilmController(@Qualifier("filmDbStorage") FilmStorage storage) {
+    public FilmController(FilmStorage storage, ObjectMapper objectMapper,
+                          Validator validator, FilmCache filmCache) {
         this.storage = storage;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.filmCache = filmCache;
     }
 
     /**
-     * Получение всех фильмов
+     * Получение всех фильмов или страницы фильмов с id больше after.
+     * Условия отбора genre, mpa, yearFrom, yearTo, minDuration и maxDuration всегда возвращают страницу.
+     * Если страница заполнена, id последнего элемента возвращается в заголовке X-Next-Cursor
      */
     @GetMapping("/films")
-    public List<Film> findAll() {
-        return storage.findAll();
+    public ResponseEntity<List<Film>> findAll(@RequestParam(required = false) Integer after,
+                                              @RequestParam(required = false) Integer limit,
+                                              FilmFilter filter) {
+        if (after == null && limit == null && filter.isEmpty()) {
+            return ResponseEntity.ok(storage.findAll());
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Размер страницы должен быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        if (filter.getYearFrom() != null && filter.getYearTo() != null
+                && filter.getYearFrom() > filter.getYearTo()) {
+            throw new ValidationException("Начальный год выпуска не может быть больше конечного");
+        }
+        if (filter.getMinDuration() != null && filter.getMaxDuration() != null
+                && filter.getMinDuration() > filter.getMaxDuration()) {
+            throw new ValidationException("Минимальная продолжительность не может быть больше максимальной");
+        }
+        int cursor = after == null ? 0 : after;
+        List<Film> page = filter.isEmpty() ? storage.findPage(cursor, pageSize)
+                : storage.findByFilter(filter, cursor, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.get(page.size() - 1).getId()));
+        }
+        return response.body(page);
+    }
+
+    /**
+     * Потоковая выгрузка всех фильмов в формате NDJSON, по одному объекту в строке
+     */
+    @GetMapping(value = "/films", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        StreamingResponseBody body = out -> storage.streamAll(item -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(item));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     /**
@@ -39,6 +115,37 @@ public class FilmController {
         return storage.add(film);
     }
 
+    /**
+     * Пакетное добавление фильмов с результатом по каждому фильму.
+     * Фильмы, не прошедшие проверку, не передаются в хранилище
+     */
+    @PostMapping(value = "/films/batch")
+    public List<FilmBatchResult> addBatch(@RequestBody List<Film> films) {
+        if (films.size() > MAX_BATCH_SIZE) {
+            throw new ValidationException(String.format("В пакете должно быть не больше %d фильмов", MAX_BATCH_SIZE));
+        }
+        FilmBatchResult[] results = new FilmBatchResult[films.size()];
+        List<Film> valid = new ArrayList<>(films.size());
+        List<Integer> validIndexes = new ArrayList<>(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            Set<ConstraintViolation<Film>> violations = validator.validate(films.get(i));
+            if (violations.isEmpty()) {
+                valid.add(films.get(i));
+                validIndexes.add(i);
+            } else {
+                ConstraintViolation<Film> violation = violations.iterator().next();
+                results[i] = FilmBatchResult.failed(i, violation.getPropertyPath() + ": " + violation.getMessage());
+            }
+        }
+        List<FilmBatchResult> stored = storage.addAll(valid);
+        for (int i = 0; i < stored.size(); i++) {
+            FilmBatchResult result = stored.get(i);
+            result.setIndex(validIndexes.get(i));
+            results[result.getIndex()] = result;
+        }
+        return Arrays.asList(results);
+    }
+
     /**
      * Обновление фильма
      */
@@ -48,11 +155,18 @@ public class FilmController {
     }
 
     /**
-     * Получение фильма по id
+     * Получение фильма по id.
+     * Ревизия фильма передаётся в ETag; если она совпадает с If-None-Match,
+     * возвращается 304 без загрузки лайков и жанров
      */
     @GetMapping("/films/{id}")
-    public Film findFilm(@PathVariable("id") Integer id) {
-        return storage.findFilmById(id);
+    public Film findFilm(@PathVariable("id") Integer id, WebRequest request, HttpServletResponse response) {
+        if (request.checkNotModified(eTag(storage.findRevision(id)))) {
+            return null;
+        }
+        Film film = storage.findFilmById(id);
+        response.setHeader(HttpHeaders.ETAG, eTag(storage.getRevision(film)));
+        return film;
     }
 
     /**
@@ -78,4 +192,53 @@ public class FilmController {
     public List<Film> getPopularFilms(@RequestParam(required = false) Optional<Integer> count) {
         return storage.findBest(count.orElse(10));
     }
+
+    /**
+     * Автодополнение названий фильмов: самые популярные фильмы с названием, начинающимся с prefix
+     */
+    @GetMapping("/films/autocomplete")
+    public List<Film> autocomplete(@RequestParam String prefix, @RequestParam(required = false) Integer limit) {
+        return storage.autocomplete(prefix, PrefixIndex.autocompleteLimit(prefix, limit));
+    }
+
+    /**
+     * Полнотекстовый поиск фильмов по названию и описанию
+     */
+    @GetMapping("/films/search")
+    public List<Film> search(@RequestParam String q, @RequestParam(required = false) Integer limit) {
+        if (q.isBlank()) {
+            throw new ValidationException("Поисковый запрос не должен быть пустым");
+        }
+        int count = limit == null ? DEFAULT_SEARCH_RESULTS : limit;
+        if (count < 1 || count > MAX_SEARCH_RESULTS) {
+            throw new ValidationException(String.format("Количество результатов поиска должно быть от 1 до %d",
+                    MAX_SEARCH_RESULTS));
+        }
+        return storage.search(q, count);
+    }
+
+    /**
+     * Получение фильмов, которые чаще всего лайкают вместе с данным
+     */
+    @GetMapping("/films/{id}/similar")
+    public List<Film> getSimilar(@PathVariable Integer id, @RequestParam(required = false) Integer limit) {
+        int count = limit == null ? DEFAULT_SIMILAR : limit;
+        if (count < 1 || count > FilmSimilarityIndex.TOP_K) {
+            throw new ValidationException(String.format("Количество похожих фильмов должно быть от 1 до %d",
+                    FilmSimilarityIndex.TOP_K));
+        }
+        return storage.findSimilar(storage.findFilmById(id), count);
+    }
+
+    /**
+     * Получение статистики кэша фильмов
+     */
+    @GetMapping("/films/cache/stats")
+    public CacheStats getCacheStats() {
+        return filmCache.getStats();
+    }
+
+    private static String eTag(String revision) {
+        return "\"" + revision + "\"";
+    }
 }
@@ -4,8 +4,9 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.model.Genre;
-import ru.yandex.practicum.storage.genre.GenreStorage;
+import ru.yandex.practicum.service.DictionaryService;
 
 import java.util.List;
 
@@ -15,21 +16,28 @@ import java.util.List;
 @RestController
 @RequiredArgsConstructor
 public class GenreController {
-    private final GenreStorage storage;
+    private final DictionaryService dictionary;
 
     /**
      * Получение всех жанров
      */
     @GetMapping("/genres")
-    public List<Genre> findAll() {
-        return storage.getAll();
+    public List<Genre> findAll(WebRequest request) {
+        if (request.checkNotModified(dictionary.getGenresETag())) {
+            return null;
+        }
+        return dictionary.getGenres();
     }
 
     /**
      * Получение жанра по id
      */
     @GetMapping("/genres/{id}")
-    public Genre findGenre(@PathVariable("id") Integer id) {
-        return storage.getById(id);
+    public Genre findGenre(@PathVariable("id") Integer id, WebRequest request) {
+        Genre genre = dictionary.getGenre(id);
+        if (request.checkNotModified(dictionary.getGenresETag())) {
+            return null;
+        }
+        return genre;
     }
 }
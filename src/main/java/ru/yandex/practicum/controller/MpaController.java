@@ -4,8 +4,9 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.model.MPA;
-import ru.yandex.practicum.storage.mpa.MPAStorage;
+import ru.yandex.practicum.service.DictionaryService;
 
 import java.util.List;
 
@@ -15,21 +16,28 @@ import java.util.List;
 @RestController
 @RequiredArgsConstructor
 public class MpaController {
-    private final MPAStorage storage;
+    private final DictionaryService dictionary;
 
     /**
      * Получение всех рейтингов
      */
     @GetMapping("/mpa")
-    public List<MPA> findAll() {
-        return storage.getAll();
+    public List<MPA> findAll(WebRequest request) {
+        if (request.checkNotModified(dictionary.getMpaETag())) {
+            return null;
+        }
+        return dictionary.getAllMpa();
     }
 
     /**
      * Получение рейтинга по id
      */
     @GetMapping("/mpa/{id}")
-    public MPA findMpa(@PathVariable("id") Integer id) {
-        return storage.getById(id);
+    public MPA findMpa(@PathVariable("id") Integer id, WebRequest request) {
+        MPA mpa = dictionary.getMpa(id);
+        if (request.checkNotModified(dictionary.getMpaETag())) {
+            return null;
+        }
+        return mpa;
     }
 }
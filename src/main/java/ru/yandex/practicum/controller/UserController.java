@@ -1,12 +1,24 @@
 package ru.yandex.practicum.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.exception.ValidationException;
+import ru.yandex.practicum.model.Film;
 import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.storage.PrefixIndex;
+import ru.yandex.practicum.storage.film.FilmStorage;
 import ru.yandex.practicum.storage.user.UserStorage;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 /**
@@ -14,20 +26,53 @@ import java.util.List;
  */
 @RestController
 public class UserController {
-    @Qualifier("userDbStorage")
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int DEFAULT_SUGGESTIONS = 10;
+    private static final int MAX_SUGGESTIONS = 100;
+    private static final int DEFAULT_RECOMMENDATIONS = 10;
+    private static final int MAX_RECOMMENDATIONS = 100;
+
     private final UserStorage storage;
+    private final FilmStorage filmStorage;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public UserController(@Qualifier("userDbStorage") UserStorage storage) {
+    public UserController(UserStorage storage, FilmStorage filmStorage, ObjectMapper objectMapper) {
         this.storage = storage;
+        this.filmStorage = filmStorage;
+        this.objectMapper = objectMapper;
     }
 
     /**
-     * Получение всех пользователей
+     * Получение всех пользователей или страницы пользователей с id больше after.
+     * Если страница заполнена, id последнего элемента возвращается в заголовке X-Next-Cursor
      */
     @GetMapping("/users")
-    public List<User> findAll() {
-        return storage.findAll();
+    public ResponseEntity<List<User>> findAll(@RequestParam(required = false) Integer after,
+                                              @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(storage.findAll());
+        }
+        int pageSize = pageSize(limit);
+        return page(storage.findPage(after == null ? 0 : after, pageSize), pageSize);
+    }
+
+    /**
+     * Потоковая выгрузка всех пользователей в формате NDJSON, по одному объекту в строке
+     */
+    @GetMapping(value = "/users", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        StreamingResponseBody body = out -> storage.streamAll(item -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(item));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     /**
@@ -47,11 +92,18 @@ public class UserController {
     }
 
     /**
-     * Получение пользователя по id
+     * Получение пользователя по id.
+     * Ревизия пользователя передаётся в ETag; если она совпадает с If-None-Match,
+     * возвращается 304 без загрузки пользователя
      */
     @GetMapping("/users/{id}")
-    public User findUser(@PathVariable("id") Integer id) {
-        return storage.findUserById(id);
+    public User findUser(@PathVariable("id") Integer id, WebRequest request, HttpServletResponse response) {
+        if (request.checkNotModified(eTag(storage.findRevision(id)))) {
+            return null;
+        }
+        User user = storage.findUserById(id);
+        response.setHeader(HttpHeaders.ETAG, eTag(storage.getRevision(user)));
+        return user;
     }
 
     /**
@@ -71,11 +123,19 @@ public class UserController {
     }
 
     /**
-     * Получение друзей пользователя
+     * Получение всех друзей пользователя или страницы друзей с id больше after.
+     * Если страница заполнена, id последнего друга возвращается в заголовке X-Next-Cursor
      */
     @GetMapping("/users/{id}/friends")
-    public List<User> getFriends(@PathVariable Integer id) {
-        return storage.getFriends(storage.findUserById(id));
+    public ResponseEntity<List<User>> getFriends(@PathVariable Integer id,
+                                                 @RequestParam(required = false) Integer after,
+                                                 @RequestParam(required = false) Integer limit) {
+        User user = storage.findUserById(id);
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(storage.getFriends(user));
+        }
+        int pageSize = pageSize(limit);
+        return page(storage.getFriendsPage(user, after == null ? 0 : after, pageSize), pageSize);
     }
 
     /**
@@ -85,4 +145,60 @@ public class UserController {
     public List<User> getCommonFriends(@PathVariable Integer id, @PathVariable Integer otherId) {
         return storage.getCommonFriends(storage.findUserById(id), storage.findUserById(otherId));
     }
-}
\ No newline at end of file
+
+    /**
+     * Рекомендации друзей: пользователи, которых добавили друзья пользователя,
+     * по убыванию числа общих друзей
+     */
+    @GetMapping("/users/{id}/friends/suggestions")
+    public List<User> getSuggestions(@PathVariable Integer id, @RequestParam(required = false) Integer limit) {
+        int count = limit == null ? DEFAULT_SUGGESTIONS : limit;
+        if (count < 1 || count > MAX_SUGGESTIONS) {
+            throw new ValidationException(String.format("Количество рекомендаций должно быть от 1 до %d",
+                    MAX_SUGGESTIONS));
+        }
+        return storage.getSuggestions(storage.findUserById(id), count);
+    }
+
+    /**
+     * Получение фильмов, рекомендованных пользователю по лайкам похожих пользователей
+     */
+    @GetMapping("/users/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable Integer id, @RequestParam(required = false) Integer limit) {
+        int count = limit == null ? DEFAULT_RECOMMENDATIONS : limit;
+        if (count < 1 || count > MAX_RECOMMENDATIONS) {
+            throw new ValidationException(String.format("Количество рекомендаций должно быть от 1 до %d",
+                    MAX_RECOMMENDATIONS));
+        }
+        return filmStorage.findRecommendations(storage.findUserById(id).getId(), count);
+    }
+
+    /**
+     * Автодополнение логинов: пользователи с логином, начинающимся с prefix,
+     * по убыванию числа входящих заявок в друзья
+     */
+    @GetMapping("/users/autocomplete")
+    public List<User> autocomplete(@RequestParam String prefix, @RequestParam(required = false) Integer limit) {
+        return storage.autocomplete(prefix, PrefixIndex.autocompleteLimit(prefix, limit));
+    }
+
+    private static int pageSize(Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException(String.format("Размер страницы должен быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        return pageSize;
+    }
+
+    private static ResponseEntity<List<User>> page(List<User> page, int pageSize) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.get(page.size() - 1).getId()));
+        }
+        return response.body(page);
+    }
+
+    private static String eTag(String revision) {
+        return "\"" + revision + "\"";
+    }
+}
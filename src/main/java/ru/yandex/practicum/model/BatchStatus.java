@@ -0,0 +1,9 @@
+package ru.yandex.practicum.model;
+
+/**
+ * Перечисление статусов элементов пакетной загрузки
+ */
+public enum BatchStatus {
+    CREATED,
+    FAILED
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 
@@ -28,4 +29,6 @@ public class Film {
     private Set<Integer> likes = new HashSet<>();
     private Set<Genre> genres = new TreeSet<>();
     private MPA mpa = new MPA();
+    @JsonIgnore
+    private long version;
 }
\ No newline at end of file
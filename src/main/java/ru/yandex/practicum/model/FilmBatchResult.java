@@ -0,0 +1,24 @@
+package ru.yandex.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Результат добавления одного фильма при пакетной загрузке
+ */
+@Data
+@AllArgsConstructor
+public class FilmBatchResult {
+    private int index;
+    private Integer id;
+    private BatchStatus status;
+    private String error;
+
+    public static FilmBatchResult created(int index, int id) {
+        return new FilmBatchResult(index, id, BatchStatus.CREATED, null);
+    }
+
+    public static FilmBatchResult failed(int index, String error) {
+        return new FilmBatchResult(index, null, BatchStatus.FAILED, error);
+    }
+}
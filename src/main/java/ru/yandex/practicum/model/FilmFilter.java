@@ -0,0 +1,27 @@
+package ru.yandex.practicum.model;
+
+import lombok.Data;
+
+import java.util.Set;
+
+/**
+ * Условия отбора фильмов. Несколько жанров или рейтингов объединяются через «или»,
+ * разные условия - через «и». Границы годов выпуска и продолжительности включаются
+ */
+@Data
+public class FilmFilter {
+    private Set<Integer> genre;
+    private Set<Integer> mpa;
+    private Integer yearFrom;
+    private Integer yearTo;
+    private Long minDuration;
+    private Long maxDuration;
+
+    /**
+     * Проверка отсутствия условий
+     */
+    public boolean isEmpty() {
+        return genre == null && mpa == null && yearFrom == null && yearTo == null
+                && minDuration == null && maxDuration == null;
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 
@@ -25,4 +26,6 @@ public class User {
     @PastOrPresent
     private LocalDate birthday;
     private Map<Integer, FriendStatus> friends = new HashMap<>();
+    @JsonIgnore
+    private long version;
 }
\ No newline at end of file
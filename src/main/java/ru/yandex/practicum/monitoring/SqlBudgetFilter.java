@@ -0,0 +1,46 @@
+package ru.yandex.practicum.monitoring;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Подсчёт SQL-запросов каждого HTTP-запроса.
+ * Если число запросов или их суммарное время превышает бюджет, пишется предупреждение,
+ * обычно это признак N+1. Запросы, выполненные в других потоках, не учитываются.
+ */
+@Slf4j
+@Component
+public class SqlBudgetFilter extends OncePerRequestFilter {
+    private final int maxStatements;
+    private final long maxTimeMs;
+
+    public SqlBudgetFilter(@Value("${filmorate.sql.budget.statements:20}") int maxStatements,
+                           @Value("${filmorate.sql.budget.time-ms:500}") long maxTimeMs) {
+        this.maxStatements = maxStatements;
+        this.maxTimeMs = maxTimeMs;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        SqlStatistics statistics = SqlStatistics.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            statistics.stop();
+            if (statistics.getStatements() > maxStatements || statistics.getTimeMillis() > maxTimeMs) {
+                log.warn("Превышен бюджет SQL-запросов: {} {} - запросов {} (бюджет {}), время {} мс (бюджет {} мс)",
+                        request.getMethod(), request.getRequestURI(), statistics.getStatements(), maxStatements,
+                        statistics.getTimeMillis(), maxTimeMs);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.yandex.practicum.monitoring;
+
+/**
+ * Счётчик SQL-запросов и времени их выполнения в текущем потоке.
+ * Область подсчёта открывается start() и закрывается stop(); области могут быть
+ * вложенными, запрос учитывается во всех открытых областях потока.
+ */
+public final class SqlStatistics {
+    private static final ThreadLocal<SqlStatistics> CURRENT = new ThreadLocal<>();
+
+    private final SqlStatistics parent;
+    private int statements;
+    private long nanos;
+
+    private SqlStatistics(SqlStatistics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Открытие новой области подсчёта в текущем потоке
+     */
+    public static SqlStatistics start() {
+        SqlStatistics statistics = new SqlStatistics(CURRENT.get());
+        CURRENT.set(statistics);
+        return statistics;
+    }
+
+    /**
+     * Закрытие области подсчёта и возврат к внешней области
+     */
+    public void stop() {
+        if (CURRENT.get() != this) {
+            throw new IllegalStateException("Закрывается не текущая область подсчёта SQL-запросов");
+        }
+        if (parent == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(parent);
+        }
+    }
+
+    /**
+     * Текущая область подсчёта или null, если подсчёт не ведётся
+     */
+    public static SqlStatistics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Учёт выполненного запроса во всех открытых областях текущего потока
+     */
+    static void record(long elapsedNanos) {
+        for (SqlStatistics statistics = CURRENT.get(); statistics != null; statistics = statistics.parent) {
+            statistics.statements++;
+            statistics.nanos += elapsedNanos;
+        }
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getTimeMillis() {
+        return nanos / 1_000_000;
+    }
+}
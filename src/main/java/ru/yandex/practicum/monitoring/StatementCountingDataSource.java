@@ -0,0 +1,78 @@
+package ru.yandex.practicum.monitoring;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Источник данных, учитывающий каждый выполненный запрос в SqlStatistics.
+ * Запросом считается вызов execute*, пакет executeBatch учитывается как один запрос.
+ */
+public class StatementCountingDataSource extends DelegatingDataSource {
+
+    public StatementCountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(Connection.class, super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(Connection.class, super.getConnection(username, password));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T wrap(Class<T> type, T target) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return invoke(target, method, args);
+                    }
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        boolean statement = target instanceof Statement && name.startsWith("execute");
+        long start = statement ? System.nanoTime() : 0;
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            if (statement) {
+                SqlStatistics.record(System.nanoTime() - start);
+            }
+        }
+        if (target instanceof Connection) {
+            switch (name) {
+                case "createStatement":
+                    return wrap(Statement.class, (Statement) result);
+                case "prepareStatement":
+                    return wrap(PreparedStatement.class, (PreparedStatement) result);
+                case "prepareCall":
+                    return wrap(CallableStatement.class, (CallableStatement) result);
+                default:
+                    return result;
+            }
+        }
+        return result;
+    }
+}
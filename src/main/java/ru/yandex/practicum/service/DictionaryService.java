@@ -0,0 +1,120 @@
+package ru.yandex.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import ru.yandex.practicum.exception.ValidationException;
+import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.Genre;
+import ru.yandex.practicum.model.MPA;
+import ru.yandex.practicum.storage.genre.GenreStorage;
+import ru.yandex.practicum.storage.mpa.MPAStorage;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Справочник жанров и рейтингов Filmorate.
+ * Таблицы GENRES и MPA заполняются из data.sql и не меняются во время работы,
+ * поэтому загружаются один раз в массивы, индексированные по id.
+ * Модели жанров и рейтингов изменяемые, поэтому наружу выдаются их копии
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DictionaryService {
+    private final GenreStorage genreStorage;
+    private final MPAStorage mpaStorage;
+    private Genre[] genresById;
+    private MPA[] mpaById;
+    private List<Genre> genres;
+    private List<MPA> mpa;
+    private String genresETag;
+    private String mpaETag;
+
+    /**
+     * Загрузка справочников из базы данных
+     */
+    @PostConstruct
+    public void load() {
+        genres = List.copyOf(genreStorage.getAll());
+        mpa = List.copyOf(mpaStorage.getAll());
+        genresById = new Genre[genres.stream().mapToInt(Genre::getId).max().orElse(0) + 1];
+        for (Genre genre : genres) {
+            genresById[genre.getId()] = genre;
+        }
+        mpaById = new MPA[mpa.stream().mapToInt(MPA::getId).max().orElse(0) + 1];
+        for (MPA rating : mpa) {
+            mpaById[rating.getId()] = rating;
+        }
+        genresETag = eTag(genres.toString());
+        mpaETag = eTag(mpa.toString());
+        log.debug("Справочники загружены: жанров {}, рейтингов {}", genres.size(), mpa.size());
+    }
+
+    /**
+     * Получение жанра по id
+     */
+    public Genre getGenre(int id) {
+        if (id < 0 || id >= genresById.length || genresById[id] == null) {
+            throw new RuntimeException(String.format("Жанр с id = %d не найден", id));
+        }
+        Genre genre = genresById[id];
+        return new Genre(genre.getId(), genre.getName());
+    }
+
+    /**
+     * Получение всех жанров
+     */
+    public List<Genre> getGenres() {
+        return genres.stream().map(genre -> new Genre(genre.getId(), genre.getName())).collect(Collectors.toList());
+    }
+
+    /**
+     * Получение рейтинга по id
+     */
+    public MPA getMpa(int id) {
+        if (id < 0 || id >= mpaById.length || mpaById[id] == null) {
+            throw new RuntimeException(String.format("Рейтинг с id = %d не найден", id));
+        }
+        MPA rating = mpaById[id];
+        return new MPA(rating.getId(), rating.getName());
+    }
+
+    /**
+     * Получение всех рейтингов
+     */
+    public List<MPA> getAllMpa() {
+        return mpa.stream().map(rating -> new MPA(rating.getId(), rating.getName())).collect(Collectors.toList());
+    }
+
+    /**
+     * Проверка, что жанры и рейтинг фильма есть в справочнике
+     */
+    public void validate(Film film) {
+        int mpaId = film.getMpa() == null ? 0 : film.getMpa().getId();
+        if (mpaId < 0 || mpaId >= mpaById.length || mpaById[mpaId] == null) {
+            throw new ValidationException(String.format("Рейтинг с id = %d не найден", mpaId));
+        }
+        for (Genre genre : film.getGenres()) {
+            if (genre.getId() < 0 || genre.getId() >= genresById.length || genresById[genre.getId()] == null) {
+                throw new ValidationException(String.format("Жанр с id = %d не найден", genre.getId()));
+            }
+        }
+    }
+
+    public String getGenresETag() {
+        return genresETag;
+    }
+
+    public String getMpaETag() {
+        return mpaETag;
+    }
+
+    private static String eTag(String content) {
+        return "\"" + DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+}
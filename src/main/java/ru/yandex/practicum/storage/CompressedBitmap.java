@@ -0,0 +1,361 @@
+package ru.yandex.practicum.storage;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Сжатое битовое множество неотрицательных id в духе Roaring bitmap.
+ * Id делятся на блоки по старшим 16 битам, блок хранит младшие 16 бит:
+ * до ARRAY_LIMIT значений - отсортированным массивом char, больше - битовой картой из 1024 long.
+ * Поэтому разреженное множество занимает два байта на id, а плотное - не больше бита.
+ * Множество изменяемое и не потокобезопасное, доступ синхронизирует владелец
+ */
+public class CompressedBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1024;
+    private int[] keys = new int[0];
+    private Container[] containers = new Container[0];
+    private int size;
+    private int cardinality;
+
+    /**
+     * Добавление id. Возвращает false, если id уже есть
+     */
+    public boolean add(int value) {
+        int key = value >>> 16;
+        int index = index(key);
+        if (index < 0) {
+            index = -index - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+                containers = Arrays.copyOf(containers, keys.length);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(containers, index, containers, index + 1, size - index);
+            keys[index] = key;
+            containers[index] = new Container();
+            size++;
+        }
+        if (!containers[index].add((char) value)) {
+            return false;
+        }
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * Удаление id. Возвращает false, если id не было
+     */
+    public boolean remove(int value) {
+        int index = index(value >>> 16);
+        if (index < 0 || !containers[index].remove((char) value)) {
+            return false;
+        }
+        cardinality--;
+        if (containers[index].cardinality == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            size--;
+            containers[size] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Проверка наличия id
+     */
+    public boolean contains(int value) {
+        int index = index(value >>> 16);
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Количество id в множестве
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Обход id по возрастанию
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    /**
+     * Не больше limit id, больших after, по возрастанию
+     */
+    public int[] select(int after, int limit) {
+        if (after == Integer.MAX_VALUE) {
+            return new int[0];
+        }
+        int from = after < 0 ? 0 : after + 1;
+        int[] result = new int[Math.min(limit, cardinality)];
+        int count = 0;
+        int index = index(from >>> 16);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        for (int i = index; i < size && count < result.length; i++) {
+            int low = keys[i] == from >>> 16 ? from & 0xFFFF : 0;
+            count = containers[i].select(keys[i] << 16, low, result, count);
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Пересечение двух множеств. Блоки сопоставляются слиянием по старшим битам,
+     * пары массивов пересекаются слиянием, массив с картой - проверкой битов, карты - по словам
+     */
+    public static CompressedBitmap and(CompressedBitmap first, CompressedBitmap second) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < first.size && j < second.size) {
+            if (first.keys[i] < second.keys[j]) {
+                i++;
+            } else if (first.keys[i] > second.keys[j]) {
+                j++;
+            } else {
+                Container container = first.containers[i].and(second.containers[j]);
+                if (container != null) {
+                    result.append(first.keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Объединение множеств. Блоки с одинаковыми старшими битами накапливаются в битовой карте,
+     * которая затем сжимается обратно в массив, если значений мало
+     */
+    public static CompressedBitmap or(Collection<CompressedBitmap> bitmaps) {
+        Map<Integer, long[]> words = new TreeMap<>();
+        for (CompressedBitmap bitmap : bitmaps) {
+            for (int i = 0; i < bitmap.size; i++) {
+                bitmap.containers[i].orInto(words.computeIfAbsent(bitmap.keys[i], key -> new long[WORDS]));
+            }
+        }
+        CompressedBitmap result = new CompressedBitmap();
+        words.forEach((key, block) -> result.append(key, Container.of(block)));
+        return result;
+    }
+
+    private void append(int key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+            containers = Arrays.copyOf(containers, keys.length);
+        }
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+        cardinality += container.cardinality;
+    }
+
+    private int index(int key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /**
+     * Блок младших 16 бит: отсортированный массив values или битовая карта words
+     */
+    private static class Container {
+        private char[] values = new char[4];
+        private long[] words;
+        private int cardinality;
+
+        static Container of(long[] words) {
+            Container container = new Container();
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            container.cardinality = count;
+            if (count > ARRAY_LIMIT) {
+                container.values = null;
+                container.words = words;
+            } else {
+                container.values = toValues(words, count);
+            }
+            return container;
+        }
+
+        boolean contains(char value) {
+            if (words != null) {
+                return (words[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        boolean add(char value) {
+            if (words != null) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) != 0) {
+                    return false;
+                }
+                words[value >>> 6] |= bit;
+                cardinality++;
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                long[] block = new long[WORDS];
+                orInto(block);
+                block[value >>> 6] |= 1L << value;
+                words = block;
+                values = null;
+                cardinality++;
+                return true;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char value) {
+            if (words != null) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) == 0) {
+                    return false;
+                }
+                words[value >>> 6] &= ~bit;
+                cardinality--;
+                if (cardinality <= ARRAY_LIMIT / 2) {
+                    values = toValues(words, cardinality);
+                    words = null;
+                }
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        Container and(Container other) {
+            if (words != null && other.words != null) {
+                long[] block = new long[WORDS];
+                for (int i = 0; i < WORDS; i++) {
+                    block[i] = words[i] & other.words[i];
+                }
+                Container container = of(block);
+                return container.cardinality == 0 ? null : container;
+            }
+            if (words != null) {
+                return other.and(this);
+            }
+            char[] common = new char[cardinality];
+            int count = 0;
+            if (other.words != null) {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        common[count++] = values[i];
+                    }
+                }
+            } else {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < other.cardinality) {
+                    if (values[i] < other.values[j]) {
+                        i++;
+                    } else if (values[i] > other.values[j]) {
+                        j++;
+                    } else {
+                        common[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            if (count == 0) {
+                return null;
+            }
+            Container container = new Container();
+            container.values = common;
+            container.cardinality = count;
+            return container;
+        }
+
+        void orInto(long[] block) {
+            if (words != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    block[i] |= words[i];
+                }
+                return;
+            }
+            for (int i = 0; i < cardinality; i++) {
+                block[values[i] >>> 6] |= 1L << values[i];
+            }
+        }
+
+        void forEach(int base, IntConsumer consumer) {
+            if (words == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    consumer.accept(base | values[i]);
+                }
+                return;
+            }
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        /**
+         * Запись в result значений не меньше low, пока result не заполнен. Возвращает новую длину
+         */
+        int select(int base, int low, int[] result, int count) {
+            if (words == null) {
+                int index = Arrays.binarySearch(values, 0, cardinality, (char) low);
+                for (int i = index < 0 ? -index - 1 : index; i < cardinality && count < result.length; i++) {
+                    result[count++] = base | values[i];
+                }
+                return count;
+            }
+            for (int i = low >>> 6; i < WORDS && count < result.length; i++) {
+                long word = i == low >>> 6 ? words[i] & (-1L << low) : words[i];
+                while (word != 0 && count < result.length) {
+                    result[count++] = base | (i << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return count;
+        }
+
+        private static char[] toValues(long[] words, int count) {
+            char[] values = new char[Math.max(count, 4)];
+            int index = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[index++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return values;
+        }
+    }
+}
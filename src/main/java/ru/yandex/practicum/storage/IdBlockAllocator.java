@@ -0,0 +1,89 @@
+package ru.yandex.practicum.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Выдача id блоками из последовательности базы данных.
+ * Каждое обращение к последовательности резервирует блок из INCREMENT значений,
+ * после чего id выдаются из памяти атомарным курсором без обращения к базе.
+ * Разные узлы получают непересекающиеся блоки, поэтому id не повторяются.
+ */
+@Slf4j
+public class IdBlockAllocator {
+    private final JdbcTemplate jdbcTemplate;
+    private final String sequence;
+    private final String table;
+    private final String idColumn;
+    private volatile Block block = new Block(1, 0);
+    private int blockSize;
+    private boolean aligned;
+
+    public IdBlockAllocator(JdbcTemplate jdbcTemplate, String sequence, String table, String idColumn) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequence = sequence;
+        this.table = table;
+        this.idColumn = idColumn;
+    }
+
+    /**
+     * Получение следующего свободного id
+     */
+    public int next() {
+        while (true) {
+            Block current = block;
+            long id = current.cursor.getAndIncrement();
+            if (id <= current.end) {
+                return (int) id;
+            }
+            synchronized (this) {
+                if (block == current) {
+                    block = reserve();
+                }
+            }
+        }
+    }
+
+    /**
+     * Резервирование нового блока id в последовательности
+     */
+    private Block reserve() {
+        if (!aligned) {
+            align();
+        }
+        long start = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + sequence, Long.class);
+        log.debug("Зарезервирован блок id {} - {} в {}", start, start + blockSize - 1, sequence);
+        return new Block(start, start + blockSize - 1);
+    }
+
+    /**
+     * Сдвиг последовательности за максимальный id таблицы.
+     * Нужен один раз для строк, добавленных до появления последовательности
+     */
+    private void align() {
+        blockSize = jdbcTemplate.queryForObject(
+                "SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?",
+                Integer.class, sequence);
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(" + idColumn + ") FROM " + table, Long.class);
+        Long current = jdbcTemplate.queryForObject(
+                "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?",
+                Long.class, sequence);
+        if (maxId != null && current != null && current <= maxId) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + (maxId + 1));
+            log.debug("Последовательность {} сдвинута на {}", sequence, maxId + 1);
+        }
+        aligned = true;
+    }
+
+    private static class Block {
+        private final AtomicLong cursor;
+        private final long end;
+
+        Block(long start, long end) {
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
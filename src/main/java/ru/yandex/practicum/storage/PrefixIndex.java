@@ -0,0 +1,333 @@
+package ru.yandex.practicum.storage;
+
+import ru.yandex.practicum.exception.ValidationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Префиксный индекс для автодополнения в памяти - сжатое префиксное дерево, в котором
+ * у каждого узла хранятся TOP_K самых популярных записей его поддерева.
+ * Ключи приводятся к нижнему регистру, ё заменяется на е.
+ * Поиск проходит по префиксу и возвращает готовый список узла, не обходя поддерево.
+ * Изменения выполняются под блокировкой индекса: новые узлы и списки публикуются целиком
+ * через volatile поля, поэтому читатели не блокируются и не видят узел в промежуточном состоянии.
+ * После изменения списки пересчитываются снизу вверх из списков детей и останавливаются
+ * на первом узле, список которого не изменился
+ */
+public class PrefixIndex {
+    public static final int TOP_K = 10;
+    private static final long[] NO_KEYS = new long[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private final Node root = new Node("");
+    private final Map<Integer, String> keys = new HashMap<>();
+    private final Map<Integer, Integer> scores = new HashMap<>();
+
+    /**
+     * Проверка префикса и количества подсказок автодополнения, по умолчанию - TOP_K
+     */
+    public static int autocompleteLimit(String prefix, Integer limit) {
+        if (prefix.isBlank()) {
+            throw new ValidationException("Префикс не должен быть пустым");
+        }
+        int count = limit == null ? TOP_K : limit;
+        if (count < 1 || count > TOP_K) {
+            throw new ValidationException(String.format("Количество подсказок должно быть от 1 до %d", TOP_K));
+        }
+        return count;
+    }
+
+    /**
+     * Добавление записи или изменение её ключа и популярности
+     */
+    public synchronized void put(int id, String key, int score) {
+        String folded = fold(key);
+        String oldKey = keys.get(id);
+        Integer oldScore = scores.get(id);
+        if (oldKey != null && oldKey.equals(folded)) {
+            setScore(id, score);
+            return;
+        }
+        if (oldKey != null) {
+            List<Node> path = path(oldKey);
+            Node terminal = path.get(path.size() - 1);
+            terminal.terminals = SortedIntArrays.delete(terminal.terminals, id);
+            if (terminal.terminals.length == 0 && terminal.children.length == 0 && path.size() > 1) {
+                path.get(path.size() - 2).removeChild(terminal);
+            }
+            scores.remove(id);
+            update(path, rank(oldScore, id), -1);
+        }
+        keys.put(id, folded);
+        scores.put(id, score);
+        List<Node> path = insert(folded);
+        Node terminal = path.get(path.size() - 1);
+        terminal.terminals = SortedIntArrays.insert(terminal.terminals, id);
+        update(path, -1, rank(score, id));
+    }
+
+    /**
+     * Изменение популярности записи
+     */
+    public synchronized void setScore(int id, int score) {
+        String key = keys.get(id);
+        Integer oldScore = scores.get(id);
+        if (key == null || oldScore == score) {
+            return;
+        }
+        scores.put(id, score);
+        update(path(key), rank(oldScore, id), rank(score, id));
+    }
+
+    /**
+     * Id не больше limit самых популярных записей с ключом, начинающимся с prefix,
+     * при равенстве популярности - по возрастанию id
+     */
+    public int[] top(String prefix, int limit) {
+        String rest = fold(prefix);
+        Node node = root;
+        while (!rest.isEmpty()) {
+            Node child = node.child(rest.charAt(0));
+            if (child == null) {
+                return new int[0];
+            }
+            int common = commonPrefix(child.label, rest);
+            if (common == rest.length()) {
+                node = child;
+                break;
+            }
+            if (common < child.label.length()) {
+                return new int[0];
+            }
+            rest = rest.substring(common);
+            node = child;
+        }
+        long[] top = node.top;
+        int[] ids = new int[Math.min(limit, top.length)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = id(top[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Узлы от корня до узла ключа, недостающие узлы создаются.
+     * Если ключ заканчивается внутри метки ребра, ребро разделяется новым узлом
+     */
+    private List<Node> insert(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        String rest = key;
+        while (!rest.isEmpty()) {
+            Node child = node.child(rest.charAt(0));
+            if (child == null) {
+                child = new Node(rest);
+                node.putChild(child);
+                path.add(child);
+                return path;
+            }
+            int common = commonPrefix(child.label, rest);
+            if (common < child.label.length()) {
+                Node split = new Node(child.label.substring(0, common));
+                Node tail = child.relabel(child.label.substring(common));
+                split.children = new Node[] {tail};
+                split.top = tail.top;
+                node.putChild(split);
+                child = split;
+            }
+            rest = rest.substring(common);
+            node = child;
+            path.add(node);
+        }
+        return path;
+    }
+
+    /**
+     * Узлы от корня до существующего узла ключа
+     */
+    private List<Node> path(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        String rest = key;
+        while (!rest.isEmpty()) {
+            node = node.child(rest.charAt(0));
+            rest = rest.substring(node.label.length());
+            path.add(node);
+        }
+        return path;
+    }
+
+    /**
+     * Пересчёт списков снизу вверх после замены ключа рейтинга oldRank на newRank (-1 - нет ключа).
+     * Если старого ключа нет в списке узла, а новый в него не попадает, списки выше тоже не меняются
+     */
+    private void update(List<Node> path, long oldRank, long newRank) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node node = path.get(i);
+            long[] top = node.top;
+            boolean listed = oldRank >= 0 && contains(top, oldRank);
+            boolean enters = newRank >= 0 && (top.length < TOP_K || newRank > top[top.length - 1]);
+            if (!listed && !enters) {
+                return;
+            }
+            node.top = collect(node);
+        }
+    }
+
+    /**
+     * TOP_K лучших записей узла: собственные записи и списки детей
+     */
+    private long[] collect(Node node) {
+        int size = node.terminals.length;
+        for (Node child : node.children) {
+            size += child.top.length;
+        }
+        long[] candidates = new long[size];
+        int index = 0;
+        for (int id : node.terminals) {
+            candidates[index++] = rank(scores.get(id), id);
+        }
+        for (Node child : node.children) {
+            System.arraycopy(child.top, 0, candidates, index, child.top.length);
+            index += child.top.length;
+        }
+        Arrays.sort(candidates);
+        long[] top = new long[Math.min(TOP_K, size)];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = candidates[size - 1 - i];
+        }
+        return top;
+    }
+
+    private static boolean contains(long[] values, long value) {
+        for (long candidate : values) {
+            if (candidate == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int commonPrefix(String first, String second) {
+        int length = Math.min(first.length(), second.length());
+        int i = 0;
+        while (i < length && first.charAt(i) == second.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Приведение ключа к нижнему регистру с заменой ё на е
+     */
+    private static String fold(String key) {
+        if (key == null) {
+            return "";
+        }
+        StringBuilder folded = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            char c = Character.toLowerCase(key.charAt(i));
+            folded.append(c == 'ё' ? 'е' : c);
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Ключ рейтинга: старшие 32 бита - популярность, младшие - инвертированный id,
+     * чтобы при равенстве выше оказывался меньший id
+     */
+    private static long rank(int score, int id) {
+        return ((long) score << 32) | (Integer.MAX_VALUE - id);
+    }
+
+    private static int id(long key) {
+        return (int) (Integer.MAX_VALUE - (key & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Узел дерева. Метка - часть ключа на ребре от родителя. Дети отсортированы по первому
+     * символу метки, списки TOP_K отсортированы по убыванию ключа рейтинга
+     */
+    private static class Node {
+        private final String label;
+        private volatile Node[] children = NO_CHILDREN;
+        private volatile long[] top = NO_KEYS;
+        private volatile int[] terminals = SortedIntArrays.EMPTY;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char first) {
+            Node[] nodes = children;
+            int low = 0;
+            int high = nodes.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char c = nodes[middle].label.charAt(0);
+                if (c < first) {
+                    low = middle + 1;
+                } else if (c > first) {
+                    high = middle - 1;
+                } else {
+                    return nodes[middle];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Добавление или замена ребёнка с тем же первым символом метки копированием массива
+         */
+        void putChild(Node child) {
+            Node[] nodes = children;
+            char first = child.label.charAt(0);
+            int index = 0;
+            while (index < nodes.length && nodes[index].label.charAt(0) < first) {
+                index++;
+            }
+            Node[] updated;
+            if (index < nodes.length && nodes[index].label.charAt(0) == first) {
+                updated = nodes.clone();
+                updated[index] = child;
+            } else {
+                updated = new Node[nodes.length + 1];
+                System.arraycopy(nodes, 0, updated, 0, index);
+                updated[index] = child;
+                System.arraycopy(nodes, index, updated, index + 1, nodes.length - index);
+            }
+            children = updated;
+        }
+
+        /**
+         * Удаление ребёнка копированием массива
+         */
+        void removeChild(Node child) {
+            Node[] nodes = children;
+            Node[] updated = new Node[nodes.length - 1];
+            int index = 0;
+            for (Node node : nodes) {
+                if (node != child) {
+                    updated[index++] = node;
+                }
+            }
+            children = updated;
+        }
+
+        /**
+         * Копия узла с новой меткой и теми же детьми, списком и записями
+         */
+        Node relabel(String newLabel) {
+            Node copy = new Node(newLabel);
+            copy.children = children;
+            copy.top = top;
+            copy.terminals = terminals;
+            return copy;
+        }
+    }
+}
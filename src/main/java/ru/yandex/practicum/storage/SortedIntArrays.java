@@ -0,0 +1,131 @@
+package ru.yandex.practicum.storage;
+
+import java.util.Arrays;
+
+/**
+ * Операции над отсортированными по возрастанию массивами int без повторов.
+ * Используются как компактные множества id в индексах в памяти: массив
+ * не изменяется, изменение возвращает новую копию
+ */
+public final class SortedIntArrays {
+    public static final int[] EMPTY = new int[0];
+    private static final int GALLOP_RATIO = 32;
+
+    private SortedIntArrays() {
+    }
+
+    /**
+     * Проверка наличия значения
+     */
+    public static boolean contains(int[] values, int value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    /**
+     * Копия массива с добавленным значением или null, если значение уже есть
+     */
+    public static int[] insert(int[] values, int value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index >= 0) {
+            return null;
+        }
+        index = -index - 1;
+        int[] updated = new int[values.length + 1];
+        System.arraycopy(values, 0, updated, 0, index);
+        updated[index] = value;
+        System.arraycopy(values, index, updated, index + 1, values.length - index);
+        return updated;
+    }
+
+    /**
+     * Копия массива без значения или null, если значения нет
+     */
+    public static int[] delete(int[] values, int value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0) {
+            return null;
+        }
+        if (values.length == 1) {
+            return EMPTY;
+        }
+        int[] updated = new int[values.length - 1];
+        System.arraycopy(values, 0, updated, 0, index);
+        System.arraycopy(values, index + 1, updated, index, values.length - index - 1);
+        return updated;
+    }
+
+    /**
+     * Пересечение массивов.
+     * Массивы близкого размера сливаются за O(n + m). Если один массив больше другого
+     * в GALLOP_RATIO раз и более, каждый элемент меньшего ищется в большем экспоненциальным
+     * поиском от предыдущей найденной позиции, что даёт O(m log(n / m))
+     */
+    public static int[] intersect(int[] first, int[] second) {
+        int[] small = first.length <= second.length ? first : second;
+        int[] result = new int[small.length];
+        int count = intersect(first, second, result);
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Размер пересечения массивов без выделения памяти под результат
+     */
+    public static int intersectionSize(int[] first, int[] second) {
+        return intersect(first, second, null);
+    }
+
+    private static int intersect(int[] first, int[] second, int[] result) {
+        int[] small = first.length <= second.length ? first : second;
+        int[] large = small == first ? second : first;
+        int count = 0;
+        if ((long) small.length * GALLOP_RATIO <= large.length) {
+            int position = 0;
+            for (int value : small) {
+                position = gallop(large, position, value);
+                if (position == large.length) {
+                    break;
+                }
+                if (large[position] == value) {
+                    if (result != null) {
+                        result[count] = value;
+                    }
+                    count++;
+                    position++;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < small.length && j < large.length) {
+                if (small[i] < large[j]) {
+                    i++;
+                } else if (small[i] > large[j]) {
+                    j++;
+                } else {
+                    if (result != null) {
+                        result[count] = small[i];
+                    }
+                    count++;
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Позиция первого элемента не меньше value, начиная с from
+     */
+    private static int gallop(int[] values, int from, int value) {
+        int bound = from;
+        int step = 1;
+        while (bound < values.length && values[bound] < value) {
+            from = bound + 1;
+            bound += step;
+            step <<= 1;
+        }
+        int index = Arrays.binarySearch(values, from, Math.min(bound, values.length), value);
+        return index >= 0 ? index : -index - 1;
+    }
+}
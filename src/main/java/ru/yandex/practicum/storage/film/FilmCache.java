@@ -0,0 +1,151 @@
+package ru.yandex.practicum.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.model.CacheStats;
+import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.Genre;
+import ru.yandex.practicum.model.MPA;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш фильмов по id с ограничением размера и времени жизни записей.
+ * Каждая запись помечается моментом начала загрузки из базы. Инвалидация
+ * сдвигает отметку полосы, в которую попадает id фильма, и все записи,
+ * загрузка которых началась раньше, перестают выдаваться. Поэтому после
+ * возврата из invalidate устаревший фильм не будет получен из кэша,
+ * даже если параллельная загрузка положит его туда позже.
+ */
+@Slf4j
+@Component
+public class FilmCache {
+    private static final int STRIPES = 1024;
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Integer> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLongArray invalidated = new AtomicLongArray(STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final int maxSize;
+    private final long ttlNanos;
+
+    public FilmCache(@Value("${filmorate.cache.films.max-size:10000}") int maxSize,
+                     @Value("${filmorate.cache.films.ttl-seconds:300}") long ttlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+    }
+
+    /**
+     * Отметка, которую нужно получить до начала загрузки фильма из базы
+     */
+    public long stamp() {
+        return clock.get();
+    }
+
+    /**
+     * Получение копии фильма из кэша или null
+     */
+    public Film get(int id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.stamp < invalidated.get(stripe(id)) || entry.expiresAt - System.nanoTime() < 0) {
+            if (entries.remove(id, entry)) {
+                evictions.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(entry.film);
+    }
+
+    /**
+     * Сохранение фильма, загруженного после получения отметки stamp
+     */
+    public void put(Film film, long stamp) {
+        if (maxSize <= 0 || stamp < invalidated.get(stripe(film.getId()))) {
+            return;
+        }
+        entries.put(film.getId(), new Entry(copy(film), stamp, System.nanoTime() + ttlNanos));
+        insertionOrder.add(film.getId());
+        queued.incrementAndGet();
+        while (entries.size() > maxSize || queued.get() > maxSize * 2) {
+            Integer eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            queued.decrementAndGet();
+            if (entries.size() > maxSize && entries.remove(eldest) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Инвалидация фильма после его изменения
+     */
+    public void invalidate(int id) {
+        long now = clock.incrementAndGet();
+        invalidated.accumulateAndGet(stripe(id), now, Math::max);
+        entries.remove(id);
+    }
+
+    /**
+     * Статистика попаданий, промахов и вытеснений
+     */
+    public CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    private static int stripe(int id) {
+        return id & (STRIPES - 1);
+    }
+
+    /**
+     * Глубокая копия фильма, общая для кэша и хранилища в памяти
+     */
+    static Film copy(Film film) {
+        Film copy = new Film();
+        copy.setId(film.getId());
+        copy.setName(film.getName());
+        copy.setDescription(film.getDescription());
+        copy.setReleaseDate(film.getReleaseDate());
+        copy.setDuration(film.getDuration());
+        copy.setLikes(new HashSet<>(film.getLikes()));
+        TreeSet<Genre> genres = new TreeSet<>();
+        for (Genre genre : film.getGenres()) {
+            genres.add(new Genre(genre.getId(), genre.getName()));
+        }
+        copy.setGenres(genres);
+        copy.setMpa(new MPA(film.getMpa().getId(), film.getMpa().getName()));
+        copy.setVersion(film.getVersion());
+        return copy;
+    }
+
+    private static class Entry {
+        private final Film film;
+        private final long stamp;
+        private final long expiresAt;
+
+        Entry(Film film, long stamp, long expiresAt) {
+            this.film = film;
+            this.stamp = stamp;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,31 +1,115 @@
 package ru.yandex.practicum.storage.film;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.annotation.Primary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.exception.FilmNotFoundException;
 import ru.yandex.practicum.exception.ValidationException;
 import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.FilmBatchResult;
+import ru.yandex.practicum.model.FilmFilter;
 import ru.yandex.practicum.model.Genre;
-import ru.yandex.practicum.model.MPA;
+import ru.yandex.practicum.service.DictionaryService;
+import ru.yandex.practicum.storage.IdBlockAllocator;
+import ru.yandex.practicum.storage.PrefixIndex;
 
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
- * Хранилище фильмов Filmorate в базе данных
+ * Хранилище фильмов Filmorate в базе данных. Используется по умолчанию или при filmorate.storage=db
  */
 @Slf4j
 @Repository("filmDbStorage")
-@Primary
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
 public class FilmDbStorage implements FilmStorage {
+    private static final int STREAM_CHUNK_SIZE = 500;
     private JdbcTemplate jdbcTemplate;
-    private Integer idCounter = 0;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final IdBlockAllocator idAllocator;
+    private final FilmPopularityIndex popularityIndex = new FilmPopularityIndex();
+    private final FilmRecommendations recommendations = new FilmRecommendations();
+    private final FilmSimilarityIndex similarityIndex = new FilmSimilarityIndex();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    private final PrefixIndex titleIndex = new PrefixIndex();
+    private final FilmFilterIndex filterIndex = new FilmFilterIndex();
+    private final LikeWriteBehindBuffer likeBuffer;
+    private final FilmCache filmCache;
+    private final DictionaryService dictionary;
+    private final int batchChunkSize;
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<Integer, Long> pendingLikeGenerations = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> likeWritesStarted = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> likeWritesFinished = new ConcurrentHashMap<>();
 
-    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         LikeWriteBehindBuffer likeBuffer, FilmCache filmCache, DictionaryService dictionary,
+                         @Value("${filmorate.films.batch-chunk-size:500}") int batchChunkSize) {
         this.jdbcTemplate = jdbcTemplate;
+        this.dictionary = dictionary;
+        this.likeBuffer = likeBuffer;
+        this.filmCache = filmCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.idAllocator = new IdBlockAllocator(jdbcTemplate, "FILMS_ID_SEQ", "FILMS", "FILM_ID");
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    /**
+     * Заполнение рейтинга популярности из счётчиков LIKES_COUNT, матрицы лайков для рекомендаций
+     * и индекса похожих фильмов из таблицы LIKES, поискового индекса, индекса автодополнения
+     * названий и индексов отбора - из таблиц FILMS, FILM_GENRES и FILM_MPA.
+     * Расхождения счётчиков с таблицей LIKES исправляет LikesCountReconciler после запуска
+     */
+    @PostConstruct
+    public void initIndexes() {
+        int[] films = new int[1];
+        jdbcTemplate.query("SELECT FILM_ID, LIKES_COUNT FROM FILMS", rs -> {
+            popularityIndex.put(rs.getInt("FILM_ID"), rs.getInt("LIKES_COUNT"));
+            films[0]++;
+        });
+        log.debug("Рейтинг популярности заполнен, фильмов: {}", films[0]);
+        jdbcTemplate.query("SELECT FILM_ID, USER_ID FROM LIKES", rs -> {
+            recommendations.put(rs.getInt("FILM_ID"), rs.getInt("USER_ID"));
+        });
+        similarityIndex.rebuild(recommendations);
+        Map<Integer, List<Integer>> genres = new HashMap<>();
+        jdbcTemplate.query("SELECT FILM_ID, GENRE_ID FROM FILM_GENRES", rs -> {
+            genres.computeIfAbsent(rs.getInt("FILM_ID"), id -> new ArrayList<>()).add(rs.getInt("GENRE_ID"));
+        });
+        Map<Integer, Integer> mpa = new HashMap<>();
+        jdbcTemplate.query("SELECT FILM_ID, MPA_ID FROM FILM_MPA", rs -> {
+            mpa.put(rs.getInt("FILM_ID"), rs.getInt("MPA_ID"));
+        });
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT FILM_ID, FILM_NAME, DESCRIPTION, " +
+                            "RELEASE_DATE, DURATION FROM FILMS",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_CHUNK_SIZE);
+            return ps;
+        }, rs -> {
+            int filmId = rs.getInt("FILM_ID");
+            searchIndex.put(filmId, rs.getString("FILM_NAME"), rs.getString("DESCRIPTION"));
+            titleIndex.put(filmId, rs.getString("FILM_NAME"), popularityIndex.getLikes(filmId));
+            filterIndex.put(filmId, genres.getOrDefault(filmId, List.of()), mpa.getOrDefault(filmId, 0),
+                    rs.getDate("RELEASE_DATE").toLocalDate(), rs.getLong("DURATION"));
+        });
     }
 
     /**
@@ -34,31 +118,68 @@ public class FilmDbStorage implements FilmStorage {
     @Override
     public List<Film> findAll() {
         String sqlQuery = "SELECT * FROM FILMS";
-        List<Film> filmList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> {
-            Film film = new Film();
-            film.setId(rs.getInt("FILM_ID"));
-            film.setName(rs.getString("FILM_NAME"));
-            film.setDescription(rs.getString("DESCRIPTION"));
-            film.setReleaseDate(rs.getDate("RELEASE_DATE").toLocalDate());
-            film.setDuration(rs.getInt("DURATION"));
-            loadLikesAndGenres(film);
-            return film;
-        });
+        List<Film> filmList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> mapRowToFilm(rs));
+        loadLikesAndGenres(filmList);
         log.debug("Текущее количество фильмов: {}", filmList.size());
         return filmList;
     }
 
+    /**
+     * Получение страницы фильмов с id больше after
+     */
+    @Override
+    public List<Film> findPage(Integer after, Integer limit) {
+        String sqlQuery = "SELECT * FROM FILMS WHERE FILM_ID > ? ORDER BY FILM_ID LIMIT ?";
+        List<Film> filmList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> mapRowToFilm(rs), after, limit);
+        log.debug("Страница фильмов после id = {}: {}", after, filmList.size());
+        return loadLikesAndGenres(filmList);
+    }
+
+    /**
+     * Получение страницы фильмов с id больше after, подходящих под условия отбора.
+     * Id отбираются битовыми индексами в памяти, фильмы загружаются одним пакетом
+     */
+    @Override
+    public List<Film> findByFilter(FilmFilter filter, Integer after, Integer limit) {
+        int[] ids = filterIndex.filter(filter, after, limit);
+        log.debug("Отбор фильмов {} после id = {}: {}", filter, after, ids.length);
+        return findFilmsByIds(ids);
+    }
+
+    /**
+     * Последовательная выгрузка всех фильмов.
+     * Фильмы читаются однонаправленным курсором и передаются потребителю
+     * порциями по STREAM_CHUNK_SIZE, поэтому в памяти находится не больше одной порции.
+     * Выгрузка идёт в транзакции только для чтения, чтобы лайки и жанры порции
+     * загружались через то же соединение, что и курсор
+     */
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            List<Film> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement("SELECT * FROM FILMS ORDER BY FILM_ID",
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(STREAM_CHUNK_SIZE);
+                return ps;
+            }, rs -> {
+                chunk.add(mapRowToFilm(rs));
+                if (chunk.size() == STREAM_CHUNK_SIZE) {
+                    loadLikesAndGenres(chunk).forEach(consumer);
+                    chunk.clear();
+                }
+            });
+            loadLikesAndGenres(chunk).forEach(consumer);
+        });
+    }
+
     /**
      * Добавление фильма
      */
     @Override
     public Film add(Film film) {
-        Integer maxCounter = jdbcTemplate.queryForObject("SELECT MAX(FILM_ID) FROM FILMS", Integer.class);
-        if (maxCounter != null) {
-            idCounter = maxCounter;
-        }
-        film.setId(++idCounter);
         checkReleaseDate(film);
+        film.setId(idAllocator.next());
         String sqlQuery = "INSERT INTO FILMS(FILM_ID, FILM_NAME, DESCRIPTION, RELEASE_DATE, DURATION) " +
                     "values (?, ?, ?, ?, ?)";
         jdbcTemplate.update(sqlQuery,
@@ -72,11 +193,7 @@ public class FilmDbStorage implements FilmStorage {
         jdbcTemplate.update(mpaQuery,
                 film.getId(),
                 film.getMpa().getId());
-        SqlRowSet mparow = jdbcTemplate.queryForRowSet("SELECT * FROM MPA WHERE MPA_ID = ?",
-                film.getMpa().getId());
-        while (mparow.next()) {
-            film.setMpa(new MPA(mparow.getInt("MPA_ID"), mparow.getString("MPA_NAME")));
-        }
+        film.setMpa(dictionary.getMpa(film.getMpa().getId()));
         String genreQuery = "INSERT INTO FILM_GENRES(FILM_ID, GENRE_ID) VALUES (?, ?)";
         List<Object[]> batchList = new ArrayList<>();
         for (Genre genre: film.getGenres()) {
@@ -84,10 +201,109 @@ public class FilmDbStorage implements FilmStorage {
         }
         jdbcTemplate.batchUpdate(genreQuery, batchList);
         loadLikesAndGenres(film);
+        int filmId = film.getId();
+        String name = film.getName();
+        String description = film.getDescription();
+        List<Integer> genreIds = genreIds(film);
+        int mpaId = film.getMpa().getId();
+        LocalDate releaseDate = film.getReleaseDate();
+        long duration = film.getDuration();
+        afterCommit(() -> {
+            popularityIndex.put(filmId, 0);
+            searchIndex.put(filmId, name, description);
+            titleIndex.put(filmId, name, 0);
+            filterIndex.put(filmId, genreIds, mpaId, releaseDate, duration);
+        });
         log.debug("Фильм к сохранению: {}", film);
         return film;
     }
 
+    /**
+     * Пакетное добавление фильмов.
+     * Дата релиза, жанры и рейтинг проверяются до записи.
+     * Фильмы записываются порциями по batchChunkSize, каждая порция - в отдельной транзакции
+     * тремя пакетными вставками в FILMS, FILM_MPA и FILM_GENRES.
+     * Если порция не записалась, её фильмы записываются по одному, и ошибка
+     * возвращается только в результатах фильмов, которые не удалось записать
+     */
+    @Override
+    public List<FilmBatchResult> addAll(List<Film> films) {
+        FilmBatchResult[] results = new FilmBatchResult[films.size()];
+        List<Integer> accepted = new ArrayList<>(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            try {
+                checkReleaseDate(films.get(i));
+                dictionary.validate(films.get(i));
+                accepted.add(i);
+            } catch (ValidationException e) {
+                results[i] = FilmBatchResult.failed(i, e.getMessage());
+            }
+        }
+        for (int from = 0; from < accepted.size(); from += batchChunkSize) {
+            List<Integer> chunk = accepted.subList(from, Math.min(from + batchChunkSize, accepted.size()));
+            List<Film> chunkFilms = new ArrayList<>(chunk.size());
+            for (Integer index : chunk) {
+                chunkFilms.add(films.get(index));
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertAll(chunkFilms));
+                for (Integer index : chunk) {
+                    results[index] = FilmBatchResult.created(index, films.get(index).getId());
+                }
+            } catch (DataAccessException e) {
+                log.warn("Ошибка пакетной записи фильмов, запись по одному: {}", e.getMessage());
+                for (Integer index : chunk) {
+                    results[index] = addOne(index, films.get(index));
+                }
+            }
+        }
+        log.debug("Пакетная загрузка фильмов: {} из {}", accepted.size(), films.size());
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Запись одного фильма пакетной загрузки в отдельной транзакции
+     */
+    private FilmBatchResult addOne(int index, Film film) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertAll(List.of(film)));
+            return FilmBatchResult.created(index, film.getId());
+        } catch (DataAccessException e) {
+            log.warn("Ошибка записи фильма {} пакета: {}", index, e.getMessage());
+            return FilmBatchResult.failed(index, "Ошибка записи фильма");
+        }
+    }
+
+    /**
+     * Запись порции фильмов пакетными вставками
+     */
+    private void insertAll(List<Film> films) {
+        List<Object[]> filmRows = new ArrayList<>(films.size());
+        List<Object[]> mpaRows = new ArrayList<>(films.size());
+        List<Object[]> genreRows = new ArrayList<>();
+        for (Film film : films) {
+            film.setId(idAllocator.next());
+            filmRows.add(new Object[] {film.getId(), film.getName(), film.getDescription(),
+                    film.getReleaseDate(), film.getDuration()});
+            mpaRows.add(new Object[] {film.getId(), film.getMpa().getId()});
+            for (Genre genre : film.getGenres()) {
+                genreRows.add(new Object[] {film.getId(), genre.getId()});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO FILMS(FILM_ID, FILM_NAME, DESCRIPTION, RELEASE_DATE, DURATION) " +
+                "values (?, ?, ?, ?, ?)", filmRows);
+        jdbcTemplate.batchUpdate("INSERT INTO FILM_MPA(FILM_ID, MPA_ID) values (?, ?)", mpaRows);
+        jdbcTemplate.batchUpdate("INSERT INTO FILM_GENRES(FILM_ID, GENRE_ID) VALUES (?, ?)", genreRows);
+        List<Film> added = new ArrayList<>(films);
+        afterCommit(() -> added.forEach(film -> {
+            popularityIndex.put(film.getId(), 0);
+            searchIndex.put(film.getId(), film.getName(), film.getDescription());
+            titleIndex.put(film.getId(), film.getName(), 0);
+            filterIndex.put(film.getId(), genreIds(film), film.getMpa().getId(), film.getReleaseDate(),
+                    film.getDuration());
+        }));
+    }
+
     /**
      * Обновление фильма
      */
@@ -97,7 +313,7 @@ public class FilmDbStorage implements FilmStorage {
         String sqlQuery1 = "SELECT COUNT(*) FROM FILMS WHERE FILM_ID = ?";
         jdbcTemplate.queryForObject(sqlQuery1, Integer.class, film.getId());
         String sqlQuery = "UPDATE FILMS SET FILM_ID = ?, FILM_NAME = ?, " +
-                "DESCRIPTION = ?, RELEASE_DATE = ?, DURATION = ? WHERE FILM_ID = ?";
+                "DESCRIPTION = ?, RELEASE_DATE = ?, DURATION = ?, ROW_VERSION = ROW_VERSION + 1 WHERE FILM_ID = ?";
         int rowsUpdated = jdbcTemplate.update(sqlQuery,
                 film.getId(),
                 film.getName(),
@@ -113,11 +329,7 @@ public class FilmDbStorage implements FilmStorage {
                 film.getId(),
                 film.getMpa().getId(),
                 film.getId());
-        SqlRowSet mparow = jdbcTemplate.queryForRowSet("SELECT * FROM MPA WHERE MPA_ID = ?",
-                film.getMpa().getId());
-        while (mparow.next()) {
-            film.setMpa(new MPA(mparow.getInt("MPA_ID"), mparow.getString("MPA_NAME")));
-        }
+        film.setMpa(dictionary.getMpa(film.getMpa().getId()));
         jdbcTemplate.update("DELETE FROM FILM_GENRES WHERE FILM_ID = ?", film.getId());
         String genreQuery = "INSERT INTO FILM_GENRES(FILM_ID, GENRE_ID) VALUES (?, ?)";
         List<Object[]> batchList = new ArrayList<>();
@@ -126,7 +338,21 @@ public class FilmDbStorage implements FilmStorage {
         }
         jdbcTemplate.batchUpdate(genreQuery, batchList);
         log.debug("Фильм к обновлению: {}", film);
-        return loadLikesAndGenres(film);
+        loadLikesAndGenres(film);
+        int filmId = film.getId();
+        String name = film.getName();
+        String description = film.getDescription();
+        List<Integer> genreIds = genreIds(film);
+        int mpaId = film.getMpa().getId();
+        LocalDate releaseDate = film.getReleaseDate();
+        long duration = film.getDuration();
+        afterCommit(() -> {
+            searchIndex.put(filmId, name, description);
+            titleIndex.put(filmId, name, popularityIndex.getLikes(filmId));
+            filterIndex.put(filmId, genreIds, mpaId, releaseDate, duration);
+        });
+        filmCache.invalidate(film.getId());
+        return film;
     }
 
     /**
@@ -134,37 +360,89 @@ public class FilmDbStorage implements FilmStorage {
      */
     @Override
     public Film findFilmById(Integer id) {
-        String sqlQuery = "SELECT * FROM FILMS WHERE FILM_ID = " + id;
-        List<Film> filmList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> {
-            Film film = new Film();
-            film.setId(rs.getInt("FILM_ID"));
-            film.setName(rs.getString("FILM_NAME"));
-            film.setDescription(rs.getString("DESCRIPTION"));
-            film.setReleaseDate(rs.getDate("RELEASE_DATE").toLocalDate());
-            film.setDuration(rs.getInt("DURATION"));
-            loadLikesAndGenres(film);
-            log.debug("Фильм по id: {}", film);
-            return film;
-        });
+        Film cached = filmCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = filmCache.stamp();
+        String sqlQuery = "SELECT * FROM FILMS WHERE FILM_ID = ?";
+        List<Film> filmList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> mapRowToFilm(rs), id);
+        loadLikesAndGenres(filmList);
+        log.debug("Фильм по id: {}", filmList);
         if (filmList.isEmpty()) {
             log.warn("Фильма с таким id не найдено");
             throw new FilmNotFoundException(String.format("Фильм с id = %d не найден", id));
         }
+        filmCache.put(filmList.get(0), stamp);
         return filmList.get(0);
     }
 
+    /**
+     * Получение ревизии фильма по id одним запросом к FILMS, без загрузки лайков и жанров
+     */
+    @Override
+    public String findRevision(Integer id) {
+        String sqlQuery = "SELECT ROW_VERSION FROM FILMS WHERE FILM_ID = ?";
+        List<Long> versions = jdbcTemplate.queryForList(sqlQuery, Long.class, id);
+        if (versions.isEmpty()) {
+            throw new FilmNotFoundException(String.format("Фильм с id = %d не найден", id));
+        }
+        return revision(id, versions.get(0));
+    }
+
+    /**
+     * Получение ревизии загруженного фильма
+     */
+    @Override
+    public String getRevision(Film film) {
+        return revision(film.getId(), film.getVersion());
+    }
+
+    /**
+     * Ревизия фильма - версия строки FILMS. При отложенной записи лайков к ней добавляются
+     * идентификатор запуска и счётчик лайков фильма, ещё не записанных в базу
+     */
+    private String revision(int id, long version) {
+        if (!likeBuffer.isEnabled()) {
+            return String.valueOf(version);
+        }
+        return version + "-" + bootId + "-" + pendingLikeGenerations.getOrDefault(id, 0L);
+    }
+
     /**
      * Установка лайка фильму
      */
     @Override
+    @Transactional
     public Film putLike(Film film, Integer id) {
         String sqlCheck = "SELECT COUNT(*) FROM USERS WHERE USER_ID = ?";
         int count = jdbcTemplate.queryForObject(sqlCheck, Integer.class, id);
         if (count == 0) {
             throw new RuntimeException("Ошибка добавления лайка");
         }
+        if (likeBuffer.isEnabled()) {
+            if (film.getLikes().contains(id) || !likeBuffer.enqueue(film.getId(), id, true)) {
+                throw new RuntimeException("Ошибка добавления лайка");
+            }
+            popularityIndex.increment(film.getId());
+            indexLike(film.getId(), id);
+            filmCache.invalidate(film.getId());
+            pendingLikeGenerations.merge(film.getId(), 1L, Long::sum);
+            film.getLikes().add(id);
+            log.debug("Лайк фильму с id = {} поставлен в очередь записи", film.getId());
+            return film;
+        }
+        beginLikeWrite(film.getId());
         String sqlQuery = "INSERT INTO LIKES (FILM_ID, USER_ID) VALUES (?, ?)";
         jdbcTemplate.update(sqlQuery, film.getId(), id);
+        jdbcTemplate.update("UPDATE FILMS SET LIKES_COUNT = LIKES_COUNT + 1, " +
+                "ROW_VERSION = ROW_VERSION + 1 WHERE FILM_ID = ?", film.getId());
+        int filmId = film.getId();
+        afterCommit(() -> {
+            popularityIndex.increment(filmId);
+            indexLike(filmId, id);
+            filmCache.invalidate(filmId);
+        });
         film.getLikes().add(id);
         log.debug("Установка лайка у фильма с id = {}", film.getId());
         return film;
@@ -174,13 +452,34 @@ public class FilmDbStorage implements FilmStorage {
      * Удаление лайка фильма
      */
     @Override
+    @Transactional
     public Film deleteLike(Integer filmId, Integer id) {
         Film film = findFilmById(filmId);
+        if (likeBuffer.isEnabled()) {
+            if (!film.getLikes().contains(id) || !likeBuffer.enqueue(filmId, id, false)) {
+                throw new RuntimeException("Ошибка удаления лайка");
+            }
+            popularityIndex.decrement(filmId);
+            unindexLike(filmId, id);
+            filmCache.invalidate(filmId);
+            pendingLikeGenerations.merge(filmId, 1L, Long::sum);
+            film.getLikes().remove(id);
+            log.debug("Удаление лайка у фильма с id = {} поставлено в очередь записи", filmId);
+            return film;
+        }
+        beginLikeWrite(filmId);
         String sqlQuery = "DELETE FROM LIKES WHERE FILM_ID = ? AND USER_ID= ?";
         int deleted = jdbcTemplate.update(sqlQuery, filmId, id);
         if (deleted == 0) {
             throw new RuntimeException("Ошибка удаления лайка");
         }
+        jdbcTemplate.update("UPDATE FILMS SET LIKES_COUNT = LIKES_COUNT - 1, " +
+                "ROW_VERSION = ROW_VERSION + 1 WHERE FILM_ID = ?", filmId);
+        afterCommit(() -> {
+            popularityIndex.decrement(filmId);
+            unindexLike(filmId, id);
+            filmCache.invalidate(filmId);
+        });
         film.getLikes().remove(id);
         log.debug("Удаление лайка у фильма с id = {}", filmId);
         return film;
@@ -192,58 +491,311 @@ public class FilmDbStorage implements FilmStorage {
     @Override
     public List<Film> findBest(Integer count) {
         log.debug("Получение {} популярных фильмов", count);
-        String sqlQuery = "SELECT " +
-                "F.FILM_ID, " +
-                "F.FILM_NAME, " +
-                "F.DESCRIPTION, " +
-                "F.RELEASE_DATE, " +
-                "F.DURATION, " +
-                "COUNT(L.FILM_ID) AS LIKES " +
-                "FROM FILMS F LEFT JOIN LIKES L ON F.FILM_ID = L.FILM_ID " +
-                "GROUP BY F.FILM_ID, F.FILM_NAME, F.DESCRIPTION, F.RELEASE_DATE, F.DURATION " +
-                "ORDER BY LIKES DESC LIMIT " + count;
-        List<Film> filmList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> {
-            Film film = new Film();
-            film.setId(rs.getInt("FILM_ID"));
-            film.setName(rs.getString("FILM_NAME"));
-            film.setDescription(rs.getString("DESCRIPTION"));
-            film.setReleaseDate(rs.getDate("RELEASE_DATE").toLocalDate());
-            film.setDuration(rs.getInt("DURATION"));
-            loadLikesAndGenres(film);
-            return film;
-        });
+        return findFilmsByIds(popularityIndex.top(count));
+    }
+
+    /**
+     * Получение рекомендованных пользователю фильмов по лайкам похожих пользователей
+     */
+    @Override
+    public List<Film> findRecommendations(Integer userId, Integer limit) {
+        int[] ids = recommendations.recommend(userId, limit);
+        log.debug("Рекомендации фильмов пользователя {}: {}", userId, ids.length);
+        return findFilmsByIds(ids);
+    }
+
+    /**
+     * Получение фильмов, которые чаще всего лайкают вместе с данным
+     */
+    @Override
+    public List<Film> findSimilar(Film film, Integer limit) {
+        int[] ids = similarityIndex.similar(film.getId(), limit);
+        log.debug("Похожие фильмы для фильма {}: {}", film.getId(), ids.length);
+        return findFilmsByIds(ids);
+    }
+
+    /**
+     * Полнотекстовый поиск фильмов по названию и описанию
+     */
+    @Override
+    public List<Film> search(String query, Integer limit) {
+        int[] ids = searchIndex.search(query, limit);
+        log.debug("Поиск фильмов по запросу '{}': {}", query, ids.length);
+        return findFilmsByIds(ids);
+    }
+
+    /**
+     * Автодополнение названий: самые популярные фильмы с названием, начинающимся с prefix
+     */
+    @Override
+    public List<Film> autocomplete(String prefix, Integer limit) {
+        int[] ids = titleIndex.top(prefix, limit);
+        return findFilmsByIds(ids);
+    }
+
+    /**
+     * Полная перестройка индекса похожих фильмов по текущим лайкам
+     */
+    public void rebuildSimilarityIndex() {
+        similarityIndex.rebuild(recommendations);
+        log.debug("Индекс похожих фильмов перестроен");
+    }
+
+    /**
+     * Получение фильмов по массиву id из индексов с сохранением порядка массива
+     */
+    public List<Film> findFilmsByIds(int[] ids) {
+        List<Integer> filmIds = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            filmIds.add(id);
+        }
+        return findFilmsByIds(filmIds);
+    }
+
+    /**
+     * Получение фильмов по списку id с сохранением порядка списка
+     */
+    public List<Film> findFilmsByIds(List<Integer> ids) {
+        Map<Integer, Film> filmsById = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            Film cached = filmCache.get(id);
+            if (cached != null) {
+                filmsById.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long stamp = filmCache.stamp();
+            String sqlQuery = "SELECT * FROM FILMS WHERE FILM_ID = ANY(?)";
+            List<Film> loaded = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> mapRowToFilm(rs),
+                    (Object) missing.toArray(new Integer[0]));
+            for (Film film : loadLikesAndGenres(loaded)) {
+                filmCache.put(film, stamp);
+                filmsById.put(film.getId(), film);
+            }
+        }
+        List<Film> filmList = new ArrayList<>(filmsById.size());
+        for (Integer id : ids) {
+            Film film = filmsById.get(id);
+            if (film != null) {
+                filmList.add(film);
+            }
+        }
         return filmList;
     }
 
+    /**
+     * Сверка рейтинга популярности с таблицей LIKES.
+     * Расхождения перепроверяются повторным запросом и исправляются, только если значение
+     * в рейтинге не изменилось с начала перепроверки, а транзакции с лайками фильма
+     * не начинались и не шли в это время - иначе фильм ждёт следующей сверки.
+     * При отложенной записи буфер лайков сначала записывается в базу, перепроверка идёт
+     * без записи буфера, а фильмы с незаписанными лайками пропускаются
+     */
+    public int verifyPopularityIndex() {
+        if (likeBuffer.isEnabled()) {
+            likeBuffer.flush();
+        }
+        List<Integer> mismatched = popularityIndex.diff(countLikes());
+        if (mismatched.isEmpty()) {
+            return 0;
+        }
+        int fixed = likeBuffer.isEnabled()
+                ? likeBuffer.withoutFlush(() -> fixPopularityIndex(mismatched))
+                : fixPopularityIndex(mismatched);
+        log.debug("Исправлено записей рейтинга популярности: {}", fixed);
+        return fixed;
+    }
+
+    private int fixPopularityIndex(List<Integer> mismatched) {
+        Map<Integer, Integer> expected = new HashMap<>();
+        Map<Integer, Long> stamps = new HashMap<>();
+        for (Integer filmId : mismatched) {
+            long started = likeWritesStarted.getOrDefault(filmId, 0L);
+            if (started == likeWritesFinished.getOrDefault(filmId, 0L)) {
+                stamps.put(filmId, started);
+                expected.put(filmId, popularityIndex.findLikes(filmId));
+            }
+        }
+        if (stamps.isEmpty()) {
+            return 0;
+        }
+        String sqlQuery = "SELECT F.FILM_ID, COUNT(L.USER_ID) AS LIKES FROM FILMS F " +
+                "LEFT JOIN LIKES L ON F.FILM_ID = L.FILM_ID " +
+                "WHERE F.FILM_ID = ANY(?) GROUP BY F.FILM_ID";
+        Map<Integer, Integer> actual = new HashMap<>();
+        jdbcTemplate.query(sqlQuery, rs -> {
+            actual.put(rs.getInt("FILM_ID"), rs.getInt("LIKES"));
+        }, (Object) stamps.keySet().toArray(new Integer[0]));
+        int fixed = 0;
+        for (Map.Entry<Integer, Long> entry : stamps.entrySet()) {
+            int filmId = entry.getKey();
+            if (likeBuffer.isEnabled() && likeBuffer.hasPending(filmId)
+                    || likeWritesStarted.getOrDefault(filmId, 0L) != (long) entry.getValue()) {
+                continue;
+            }
+            Integer likes = actual.get(filmId);
+            Integer seen = expected.get(filmId);
+            if (likes == null) {
+                if (seen != null && popularityIndex.compareAndRemove(filmId, seen)) {
+                    fixed++;
+                }
+            } else if (popularityIndex.compareAndPut(filmId, seen, likes)) {
+                fixed++;
+            }
+        }
+        return fixed;
+    }
+
+    /**
+     * Пересчёт счётчиков лайков по таблице LIKES
+     */
+    @Transactional
+    public int reconcileLikesCount() {
+        String sqlQuery = "UPDATE FILMS F SET LIKES_COUNT = " +
+                "(SELECT COUNT(*) FROM LIKES L WHERE L.FILM_ID = F.FILM_ID) " +
+                "WHERE LIKES_COUNT <> (SELECT COUNT(*) FROM LIKES L WHERE L.FILM_ID = F.FILM_ID)";
+        int fixed = jdbcTemplate.update(sqlQuery);
+        log.debug("Исправлено счётчиков лайков: {}", fixed);
+        return fixed;
+    }
+
+    /**
+     * Подсчёт лайков всех фильмов по таблице LIKES
+     */
+    private Map<Integer, Integer> countLikes() {
+        String sqlQuery = "SELECT F.FILM_ID, COUNT(L.USER_ID) AS LIKES FROM FILMS F " +
+                "LEFT JOIN LIKES L ON F.FILM_ID = L.FILM_ID GROUP BY F.FILM_ID";
+        Map<Integer, Integer> likes = new HashMap<>();
+        jdbcTemplate.query(sqlQuery, rs -> {
+            likes.put(rs.getInt("FILM_ID"), rs.getInt("LIKES"));
+        });
+        return likes;
+    }
+
+    /**
+     * Учёт начала транзакции с лайком фильма для сверки рейтинга популярности.
+     * Завершение транзакции учитывается после обновления индексов в afterCommit
+     */
+    private void beginLikeWrite(int filmId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        likeWritesStarted.merge(filmId, 1L, Long::sum);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                likeWritesFinished.merge(filmId, 1L, Long::sum);
+            }
+        });
+    }
+
+    /**
+     * Учёт лайка в матрице лайков, индексе похожих фильмов и популярности для автодополнения
+     */
+    private void indexLike(int filmId, int userId) {
+        titleIndex.setScore(filmId, popularityIndex.getLikes(filmId));
+        int[] likedBefore = recommendations.put(filmId, userId);
+        if (likedBefore != null) {
+            similarityIndex.increment(filmId, likedBefore);
+        }
+    }
+
+    /**
+     * Учёт удаления лайка в матрице лайков, индексе похожих фильмов и популярности для автодополнения
+     */
+    private void unindexLike(int filmId, int userId) {
+        titleIndex.setScore(filmId, popularityIndex.getLikes(filmId));
+        int[] likedAfter = recommendations.remove(filmId, userId);
+        if (likedAfter != null) {
+            similarityIndex.decrement(filmId, likedAfter);
+        }
+    }
+
+    /**
+     * Id жанров фильма
+     */
+    private static List<Integer> genreIds(Film film) {
+        List<Integer> ids = new ArrayList<>(film.getGenres().size());
+        for (Genre genre : film.getGenres()) {
+            ids.add(genre.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Выполнение действия после фиксации текущей транзакции
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
     /**
      * Загрузка лайков и жанров фильма из базы данных
      */
     public Film loadLikesAndGenres(Film film) {
-        Set<Integer> likes = new HashSet<>();
-        Set<Genre> genres = new TreeSet<>();
+        loadLikesAndGenres(List.of(film));
+        return film;
+    }
 
-        SqlRowSet likeRows = jdbcTemplate.queryForRowSet(
-                "SELECT * FROM LIKES WHERE FILM_ID = ?", film.getId());
-        while (likeRows.next()) {
-            likes.add(likeRows.getInt("USER_ID"));
+    /**
+     * Загрузка лайков, жанров и рейтингов для списка фильмов.
+     * Выполняет три запроса независимо от количества фильмов в списке,
+     * названия жанров и рейтингов берутся из справочника.
+     */
+    public List<Film> loadLikesAndGenres(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
         }
-        film.setLikes(likes);
-
-        String genreQuery = "SELECT * FROM FILM_GENRES " +
-                    "JOIN GENRES ON FILM_GENRES.GENRE_ID = GENRES.GENRE_ID WHERE FILM_ID = ?";
-        SqlRowSet genreRows = jdbcTemplate.queryForRowSet(genreQuery, film.getId());
-        while (genreRows.next()) {
-            genres.add(new Genre(genreRows.getInt("GENRE_ID"),
-                    genreRows.getString("GENRE_NAME")));
+        Map<Integer, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            film.setLikes(new HashSet<>());
+            film.setGenres(new TreeSet<>());
+            filmsById.put(film.getId(), film);
         }
-        film.setGenres(genres);
+        Integer[] ids = filmsById.keySet().toArray(new Integer[0]);
 
-        String mpaQuery = "SELECT * FROM (SELECT * FROM FILM_MPA WHERE FILM_ID = ?) AS M " +
-                "JOIN MPA ON M.MPA_ID = MPA.MPA_ID;";
-        SqlRowSet mpaRows = jdbcTemplate.queryForRowSet(mpaQuery, film.getId());
-        while (mpaRows.next()) {
-            film.setMpa(new MPA(mpaRows.getInt("MPA_ID"), mpaRows.getString("MPA_NAME")));
+        jdbcTemplate.query("SELECT FILM_ID, USER_ID FROM LIKES WHERE FILM_ID = ANY(?)", rs -> {
+            filmsById.get(rs.getInt("FILM_ID")).getLikes().add(rs.getInt("USER_ID"));
+        }, (Object) ids);
+        if (likeBuffer.isEnabled()) {
+            films.forEach(likeBuffer::applyPending);
         }
+
+        String genreQuery = "SELECT FILM_ID, GENRE_ID FROM FILM_GENRES WHERE FILM_ID = ANY(?)";
+        jdbcTemplate.query(genreQuery, rs -> {
+            filmsById.get(rs.getInt("FILM_ID")).getGenres().add(dictionary.getGenre(rs.getInt("GENRE_ID")));
+        }, (Object) ids);
+
+        String mpaQuery = "SELECT FILM_ID, MPA_ID FROM FILM_MPA WHERE FILM_ID = ANY(?)";
+        jdbcTemplate.query(mpaQuery, rs -> {
+            filmsById.get(rs.getInt("FILM_ID")).setMpa(dictionary.getMpa(rs.getInt("MPA_ID")));
+        }, (Object) ids);
+        return films;
+    }
+
+    /**
+     * Преобразование строки таблицы FILMS в фильм
+     */
+    private Film mapRowToFilm(ResultSet rs) throws SQLException {
+        Film film = new Film();
+        film.setId(rs.getInt("FILM_ID"));
+        film.setName(rs.getString("FILM_NAME"));
+        film.setDescription(rs.getString("DESCRIPTION"));
+        film.setReleaseDate(rs.getDate("RELEASE_DATE").toLocalDate());
+        film.setDuration(rs.getInt("DURATION"));
+        film.setVersion(rs.getLong("ROW_VERSION"));
         return film;
     }
 
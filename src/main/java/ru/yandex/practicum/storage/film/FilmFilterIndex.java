@@ -0,0 +1,172 @@
+package ru.yandex.practicum.storage.film;
+
+import ru.yandex.practicum.model.FilmFilter;
+import ru.yandex.practicum.storage.CompressedBitmap;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Битовые индексы фильмов для отбора по жанру, рейтингу, году выпуска и продолжительности в памяти.
+ * Для каждого жанра, рейтинга и года хранится сжатое множество id фильмов,
+ * продолжительность делится на интервалы по DURATION_BUCKET минут.
+ * Отбор объединяет множества внутри условия и пересекает условия от меньшего к большему.
+ * Фильмы граничных интервалов продолжительности проверяются по точному значению.
+ * Множества изменяемые, поэтому отбор выполняется под блокировкой чтения, а изменение - записи
+ */
+public class FilmFilterIndex {
+    private static final int DURATION_BUCKET = 10;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CompressedBitmap all = new CompressedBitmap();
+    private final Map<Integer, CompressedBitmap> byGenre = new HashMap<>();
+    private final Map<Integer, CompressedBitmap> byMpa = new HashMap<>();
+    private final NavigableMap<Integer, CompressedBitmap> byYear = new TreeMap<>();
+    private final NavigableMap<Integer, CompressedBitmap> byDuration = new TreeMap<>();
+    private final Map<Integer, Attributes> attributesByFilm = new HashMap<>();
+
+    /**
+     * Добавление фильма или замена его признаков
+     */
+    public void put(int filmId, Collection<Integer> genreIds, int mpaId, LocalDate releaseDate, long duration) {
+        Attributes attributes = new Attributes(genreIds.stream().mapToInt(Integer::intValue).toArray(),
+                mpaId, releaseDate.getYear(), duration);
+        lock.writeLock().lock();
+        try {
+            Attributes old = attributesByFilm.put(filmId, attributes);
+            if (old != null) {
+                for (int genreId : old.genreIds) {
+                    remove(byGenre, genreId, filmId);
+                }
+                remove(byMpa, old.mpaId, filmId);
+                remove(byYear, old.year, filmId);
+                remove(byDuration, bucket(old.duration), filmId);
+            }
+            all.add(filmId);
+            for (int genreId : attributes.genreIds) {
+                byGenre.computeIfAbsent(genreId, id -> new CompressedBitmap()).add(filmId);
+            }
+            byMpa.computeIfAbsent(mpaId, id -> new CompressedBitmap()).add(filmId);
+            byYear.computeIfAbsent(attributes.year, year -> new CompressedBitmap()).add(filmId);
+            byDuration.computeIfAbsent(bucket(duration), bucket -> new CompressedBitmap()).add(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Id не больше limit фильмов с id больше after, подходящих под условия, по возрастанию id
+     */
+    public int[] filter(FilmFilter filter, int after, int limit) {
+        lock.readLock().lock();
+        try {
+            List<CompressedBitmap> conditions = new ArrayList<>();
+            if (filter.getGenre() != null) {
+                conditions.add(union(byGenre, filter.getGenre()));
+            }
+            if (filter.getMpa() != null) {
+                conditions.add(union(byMpa, filter.getMpa()));
+            }
+            if (filter.getYearFrom() != null || filter.getYearTo() != null) {
+                int from = filter.getYearFrom() == null ? Integer.MIN_VALUE : filter.getYearFrom();
+                int to = filter.getYearTo() == null ? Integer.MAX_VALUE : filter.getYearTo();
+                conditions.add(from > to ? new CompressedBitmap()
+                        : CompressedBitmap.or(byYear.subMap(from, true, to, true).values()));
+            }
+            if (filter.getMinDuration() != null || filter.getMaxDuration() != null) {
+                long min = filter.getMinDuration() == null ? Long.MIN_VALUE : filter.getMinDuration();
+                long max = filter.getMaxDuration() == null ? Long.MAX_VALUE : filter.getMaxDuration();
+                conditions.add(durations(min, max));
+            }
+            if (conditions.isEmpty()) {
+                return all.select(after, limit);
+            }
+            conditions.sort(Comparator.comparingInt(CompressedBitmap::cardinality));
+            CompressedBitmap result = conditions.get(0);
+            for (int i = 1; i < conditions.size() && result.cardinality() > 0; i++) {
+                result = CompressedBitmap.and(result, conditions.get(i));
+            }
+            return result.select(after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static CompressedBitmap union(Map<Integer, CompressedBitmap> bitmaps, Collection<Integer> ids) {
+        List<CompressedBitmap> selected = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            CompressedBitmap bitmap = bitmaps.get(id);
+            if (bitmap != null) {
+                selected.add(bitmap);
+            }
+        }
+        return CompressedBitmap.or(selected);
+    }
+
+    /**
+     * Фильмы с продолжительностью от min до max: внутренние интервалы берутся целиком,
+     * граничные - только если граница совпадает с границей интервала, иначе фильмы проверяются поштучно
+     */
+    private CompressedBitmap durations(long min, long max) {
+        if (min > max) {
+            return new CompressedBitmap();
+        }
+        int first = bucket(Math.max(min, 0));
+        int last = bucket(Math.max(max, 0));
+        List<CompressedBitmap> selected = new ArrayList<>();
+        for (Map.Entry<Integer, CompressedBitmap> entry : byDuration.subMap(first, true, last, true).entrySet()) {
+            int bucket = entry.getKey();
+            long bucketStart = (long) bucket * DURATION_BUCKET;
+            long bucketEnd = bucketStart + DURATION_BUCKET - 1;
+            if (min <= bucketStart && bucketEnd <= max) {
+                selected.add(entry.getValue());
+                continue;
+            }
+            CompressedBitmap partial = new CompressedBitmap();
+            entry.getValue().forEach(filmId -> {
+                long duration = attributesByFilm.get(filmId).duration;
+                if (min <= duration && duration <= max) {
+                    partial.add(filmId);
+                }
+            });
+            selected.add(partial);
+        }
+        return CompressedBitmap.or(selected);
+    }
+
+    private static void remove(Map<Integer, CompressedBitmap> bitmaps, int key, int filmId) {
+        CompressedBitmap bitmap = bitmaps.get(key);
+        if (bitmap != null && bitmap.remove(filmId) && bitmap.cardinality() == 0) {
+            bitmaps.remove(key);
+        }
+    }
+
+    private static int bucket(long duration) {
+        return (int) Math.min(duration / DURATION_BUCKET, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Признаки фильма, по которым он записан в индексы
+     */
+    private static class Attributes {
+        private final int[] genreIds;
+        private final int mpaId;
+        private final int year;
+        private final long duration;
+
+        Attributes(int[] genreIds, int mpaId, int year, long duration) {
+            this.genreIds = genreIds;
+            this.mpaId = mpaId;
+            this.year = year;
+            this.duration = duration;
+        }
+    }
+}
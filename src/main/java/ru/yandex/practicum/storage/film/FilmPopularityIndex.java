@@ -0,0 +1,146 @@
+package ru.yandex.practicum.storage.film;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Рейтинг фильмов по количеству лайков в памяти.
+ * Ключ рейтинга упакован в long: старшие 32 бита - инвертированное число лайков,
+ * младшие - id фильма, поэтому обход по возрастанию даёт самые популярные фильмы первыми.
+ */
+public class FilmPopularityIndex {
+    private final Map<Integer, Integer> likesByFilm = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Long> ranking = new ConcurrentSkipListSet<>();
+
+    /**
+     * Установка количества лайков фильма
+     */
+    public void put(int filmId, int likes) {
+        likesByFilm.compute(filmId, (id, old) -> move(id, old, likes));
+    }
+
+    /**
+     * Увеличение количества лайков фильма на единицу
+     */
+    public void increment(int filmId) {
+        likesByFilm.compute(filmId, (id, old) -> move(id, old, old == null ? 1 : old + 1));
+    }
+
+    /**
+     * Уменьшение количества лайков фильма на единицу
+     */
+    public void decrement(int filmId) {
+        likesByFilm.compute(filmId, (id, old) -> move(id, old, old == null ? 0 : Math.max(0, old - 1)));
+    }
+
+    /**
+     * Количество лайков фильма
+     */
+    public int getLikes(int filmId) {
+        return likesByFilm.getOrDefault(filmId, 0);
+    }
+
+    /**
+     * Количество лайков фильма или null, если фильма нет в рейтинге
+     */
+    public Integer findLikes(int filmId) {
+        return likesByFilm.get(filmId);
+    }
+
+    /**
+     * Установка количества лайков фильма, только если в рейтинге всё ещё значение expected
+     * (null - фильма нет в рейтинге). Возвращает true, если значение изменилось
+     */
+    public boolean compareAndPut(int filmId, Integer expected, int likes) {
+        boolean[] changed = new boolean[1];
+        likesByFilm.compute(filmId, (id, old) -> {
+            if (!Objects.equals(old, expected) || old != null && old == likes) {
+                return old;
+            }
+            changed[0] = true;
+            return move(id, old, likes);
+        });
+        return changed[0];
+    }
+
+    /**
+     * Удаление фильма из рейтинга, только если в рейтинге всё ещё значение expected
+     */
+    public boolean compareAndRemove(int filmId, int expected) {
+        boolean[] removed = new boolean[1];
+        likesByFilm.computeIfPresent(filmId, (id, old) -> {
+            if (old != expected) {
+                return old;
+            }
+            ranking.remove(key(id, old));
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Получение id N самых популярных фильмов
+     */
+    public List<Integer> top(int count) {
+        List<Integer> ids = new ArrayList<>(Math.max(0, Math.min(count, likesByFilm.size())));
+        Set<Integer> seen = new HashSet<>();
+        for (Long key : ranking) {
+            if (ids.size() >= count) {
+                break;
+            }
+            int filmId = (int) (long) key;
+            if (seen.add(filmId)) {
+                ids.add(filmId);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Сверка рейтинга с количеством лайков из базы данных.
+     * Возвращает id фильмов, у которых значения расходятся.
+     */
+    public List<Integer> diff(Map<Integer, Integer> actual) {
+        List<Integer> mismatched = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : actual.entrySet()) {
+            if (getLikes(entry.getKey()) != entry.getValue() || !likesByFilm.containsKey(entry.getKey())) {
+                mismatched.add(entry.getKey());
+            }
+        }
+        for (Integer filmId : likesByFilm.keySet()) {
+            if (!actual.containsKey(filmId)) {
+                mismatched.add(filmId);
+            }
+        }
+        return mismatched;
+    }
+
+    /**
+     * Удаление фильма из рейтинга
+     */
+    public void remove(int filmId) {
+        likesByFilm.computeIfPresent(filmId, (id, old) -> {
+            ranking.remove(key(id, old));
+            return null;
+        });
+    }
+
+    private Integer move(int filmId, Integer old, int likes) {
+        ranking.add(key(filmId, likes));
+        if (old != null && old != likes) {
+            ranking.remove(key(filmId, old));
+        }
+        return likes;
+    }
+
+    private static long key(int filmId, int likes) {
+        return ((long) (Integer.MAX_VALUE - likes) << 32) | (filmId & 0xFFFFFFFFL);
+    }
+}
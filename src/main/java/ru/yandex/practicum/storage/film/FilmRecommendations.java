@@ -0,0 +1,275 @@
+package ru.yandex.practicum.storage.film;
+
+import ru.yandex.practicum.storage.SortedIntArrays;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Рекомендации фильмов по лайкам похожих пользователей в памяти.
+ * Лайки хранятся разреженной матрицей пользователь × фильм в двух направлениях:
+ * фильмы пользователя и пользователи фильма - отсортированные массивы int, которые
+ * не изменяются после публикации, поэтому чтение не требует блокировок.
+ * Соседи пользователя - те, кто лайкнул хотя бы один его фильм; похожесть - число общих лайков.
+ * При большом числе соседей похожесть считается параллельно в общем ForkJoinPool.
+ * Результат кэшируется для пользователя на CACHE_TTL_NANOS и сбрасывается при изменении его лайков.
+ * Как в FilmCache, запись помечается отметкой до начала расчёта, а изменение лайков сдвигает
+ * отметку полосы пользователя, поэтому результат, посчитанный по старым лайкам, не выдаётся.
+ * Больше MAX_CACHED_USERS записей не хранится, вытесняются самые старые
+ */
+public class FilmRecommendations {
+    private static final int MAX_CANDIDATES = 100_000;
+    private static final int NEIGHBOURS = 50;
+    private static final int PARALLEL_THRESHOLD = 2048;
+    private static final int MAX_CACHED_USERS = 10_000;
+    private static final long CACHE_TTL_NANOS = 60_000_000_000L;
+    private static final int STRIPES = 1024;
+    private final Map<Integer, int[]> filmsByUser = new ConcurrentHashMap<>();
+    private final Map<Integer, int[]> usersByFilm = new ConcurrentHashMap<>();
+    private final Map<Integer, CachedRecommendations> cache = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Integer> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLongArray invalidated = new AtomicLongArray(STRIPES);
+
+    /**
+     * Добавление лайка пользователя userId фильму filmId.
+     * Возвращает фильмы, которые пользователь лайкнул до этого, или null, если лайк уже был
+     */
+    public int[] put(int filmId, int userId) {
+        int[][] before = new int[1][];
+        filmsByUser.compute(userId, (id, films) -> {
+            int[] updated = insert(films, filmId);
+            before[0] = updated == films ? null : films == null ? SortedIntArrays.EMPTY : films;
+            return updated;
+        });
+        usersByFilm.compute(filmId, (id, users) -> insert(users, userId));
+        invalidate(userId);
+        return before[0];
+    }
+
+    /**
+     * Удаление лайка пользователя userId у фильма filmId.
+     * Возвращает оставшиеся лайки пользователя или null, если лайка не было
+     */
+    public int[] remove(int filmId, int userId) {
+        int[][] after = new int[1][];
+        filmsByUser.computeIfPresent(userId, (id, films) -> {
+            int[] updated = delete(films, filmId);
+            after[0] = updated == films ? null : updated == null ? SortedIntArrays.EMPTY : updated;
+            return updated;
+        });
+        usersByFilm.computeIfPresent(filmId, (id, users) -> delete(users, userId));
+        invalidate(userId);
+        return after[0];
+    }
+
+    /**
+     * Id фильмов, которые лайкнул пользователь, по возрастанию
+     */
+    public int[] likes(int userId) {
+        return filmsByUser.getOrDefault(userId, SortedIntArrays.EMPTY);
+    }
+
+    /**
+     * Id пользователей, которые лайкнули фильм, по возрастанию
+     */
+    public int[] users(int filmId) {
+        return usersByFilm.getOrDefault(filmId, SortedIntArrays.EMPTY);
+    }
+
+    /**
+     * Id фильмов, у которых есть лайки
+     */
+    public Set<Integer> films() {
+        return usersByFilm.keySet();
+    }
+
+    /**
+     * Id не больше limit рекомендованных пользователю фильмов по убыванию оценки,
+     * при равенстве - по возрастанию id. Оценка фильма - сумма похожести NEIGHBOURS
+     * самых похожих соседей, которые его лайкнули. Фильмы, которые пользователь
+     * уже лайкнул, не рекомендуются
+     */
+    public int[] recommend(int userId, int limit) {
+        CachedRecommendations cached = cache.get(userId);
+        long now = System.nanoTime();
+        if (cached != null && cached.stamp >= invalidated.get(stripe(userId))
+                && now - cached.createdAt < CACHE_TTL_NANOS
+                && (cached.limit >= limit || cached.filmIds.length < cached.limit)) {
+            return cached.filmIds.length > limit ? Arrays.copyOf(cached.filmIds, limit) : cached.filmIds;
+        }
+        long stamp = clock.get();
+        int[] filmIds = score(userId, limit);
+        if (stamp >= invalidated.get(stripe(userId))) {
+            store(userId, new CachedRecommendations(filmIds, limit, now, stamp));
+        }
+        return filmIds;
+    }
+
+    /**
+     * Сброс кэша пользователя после изменения его лайков
+     */
+    private void invalidate(int userId) {
+        long now = clock.incrementAndGet();
+        invalidated.accumulateAndGet(stripe(userId), now, Math::max);
+        cache.remove(userId);
+    }
+
+    /**
+     * Сохранение рекомендаций с вытеснением самых старых записей сверх MAX_CACHED_USERS
+     */
+    private void store(int userId, CachedRecommendations recommendations) {
+        cache.put(userId, recommendations);
+        insertionOrder.add(userId);
+        queued.incrementAndGet();
+        while (cache.size() > MAX_CACHED_USERS || queued.get() > MAX_CACHED_USERS * 2) {
+            Integer eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            queued.decrementAndGet();
+            if (cache.size() > MAX_CACHED_USERS) {
+                cache.remove(eldest);
+            }
+        }
+    }
+
+    private static int stripe(int userId) {
+        return userId & (STRIPES - 1);
+    }
+
+    private int[] score(int userId, int limit) {
+        int[] liked = likes(userId);
+        int[] neighbours = neighbours(userId, liked);
+        long[] weighted = new long[1024];
+        int size = 0;
+        for (int i = 0; i < neighbours.length && size < MAX_CANDIDATES; i += 2) {
+            for (int filmId : likes(neighbours[i])) {
+                if (SortedIntArrays.contains(liked, filmId)) {
+                    continue;
+                }
+                if (size == weighted.length) {
+                    weighted = Arrays.copyOf(weighted, size * 2);
+                }
+                weighted[size++] = ((long) filmId << 32) | neighbours[i + 1];
+            }
+        }
+        Arrays.sort(weighted, 0, size);
+        PriorityQueue<Long> top = new PriorityQueue<>(limit + 1);
+        for (int i = 0; i < size; ) {
+            int filmId = (int) (weighted[i] >>> 32);
+            long score = 0;
+            while (i < size && (int) (weighted[i] >>> 32) == filmId) {
+                score += (int) weighted[i];
+                i++;
+            }
+            top.add(rank((int) Math.min(score, Integer.MAX_VALUE), filmId));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        return ids(top);
+    }
+
+    /**
+     * Самые похожие соседи пользователя парами (id, число общих лайков).
+     * Соседи собираются из списков пользователей лайкнутых фильмов, не больше MAX_CANDIDATES
+     */
+    private int[] neighbours(int userId, int[] liked) {
+        int[] candidates = new int[1024];
+        int size = 0;
+        for (int filmId : liked) {
+            int[] users = usersByFilm.getOrDefault(filmId, SortedIntArrays.EMPTY);
+            int count = Math.min(users.length, MAX_CANDIDATES - size);
+            if (size + count > candidates.length) {
+                candidates = Arrays.copyOf(candidates, Math.min(MAX_CANDIDATES, Math.max(size + count, size * 2)));
+            }
+            System.arraycopy(users, 0, candidates, size, count);
+            size += count;
+            if (size == MAX_CANDIDATES) {
+                break;
+            }
+        }
+        IntStream unique = IntStream.of(candidates).limit(size).sorted().distinct().filter(id -> id != userId);
+        if (size >= PARALLEL_THRESHOLD) {
+            unique = unique.parallel();
+        }
+        long[] ranked = unique
+                .mapToLong(id -> rank(SortedIntArrays.intersectionSize(liked, likes(id)), id))
+                .filter(key -> key >>> 32 > 0)
+                .toArray();
+        PriorityQueue<Long> top = new PriorityQueue<>(NEIGHBOURS + 1);
+        for (long key : ranked) {
+            top.add(key);
+            if (top.size() > NEIGHBOURS) {
+                top.poll();
+            }
+        }
+        int[] neighbours = new int[top.size() * 2];
+        for (int i = neighbours.length - 2; i >= 0; i -= 2) {
+            long key = top.poll();
+            neighbours[i] = id(key);
+            neighbours[i + 1] = (int) (key >>> 32);
+        }
+        return neighbours;
+    }
+
+    private static int[] insert(int[] values, int value) {
+        if (values == null) {
+            return new int[]{value};
+        }
+        int[] updated = SortedIntArrays.insert(values, value);
+        return updated == null ? values : updated;
+    }
+
+    private static int[] delete(int[] values, int value) {
+        int[] updated = SortedIntArrays.delete(values, value);
+        if (updated == null) {
+            return values;
+        }
+        return updated.length == 0 ? null : updated;
+    }
+
+    /**
+     * Ключ рейтинга: старшие 32 бита - оценка, младшие - инвертированный id,
+     * чтобы при равенстве выше оказывался меньший id
+     */
+    private static long rank(int score, int id) {
+        return ((long) score << 32) | (Integer.MAX_VALUE - id);
+    }
+
+    private static int id(long key) {
+        return (int) (Integer.MAX_VALUE - (key & 0xFFFFFFFFL));
+    }
+
+    private static int[] ids(PriorityQueue<Long> top) {
+        int[] result = new int[top.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = id(top.poll());
+        }
+        return result;
+    }
+
+    private static class CachedRecommendations {
+        private final int[] filmIds;
+        private final int limit;
+        private final long createdAt;
+        private final long stamp;
+
+        CachedRecommendations(int[] filmIds, int limit, long createdAt, long stamp) {
+            this.filmIds = filmIds;
+            this.limit = limit;
+            this.createdAt = createdAt;
+            this.stamp = stamp;
+        }
+    }
+}
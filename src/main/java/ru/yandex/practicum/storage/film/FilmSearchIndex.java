@@ -0,0 +1,200 @@
+package ru.yandex.practicum.storage.film;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Обратный индекс для полнотекстового поиска по названию и описанию фильмов в памяти.
+ * Текст разбивается на слова из букв и цифр, слова приводятся к нижнему регистру, ё заменяется на е.
+ * Для каждого слова хранится список фильмов - отсортированные массивы id и веса вхождений
+ * (слово в названии весит NAME_WEIGHT, в описании - 1). Списки не изменяются после публикации,
+ * новые фильмы с наибольшим id дописываются в конец общего массива без копирования.
+ * Запрос ранжируется по BM25 без учёта длины текста, лучшие limit выбираются кучей
+ */
+public class FilmSearchIndex {
+    private static final int NAME_WEIGHT = 3;
+    private static final int MAX_QUERY_TERMS = 10;
+    private static final double K1 = 1.2;
+    private final Map<String, Postings> postingsByTerm = new ConcurrentHashMap<>();
+    private final Map<Integer, String[]> termsByFilm = new ConcurrentHashMap<>();
+
+    /**
+     * Добавление или замена текста фильма в индексе
+     */
+    public synchronized void put(int filmId, String name, String description) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String term : tokenize(name)) {
+            weights.merge(term, NAME_WEIGHT, Integer::sum);
+        }
+        for (String term : tokenize(description)) {
+            weights.merge(term, 1, Integer::sum);
+        }
+        String[] old = termsByFilm.get(filmId);
+        if (old != null) {
+            for (String term : old) {
+                if (!weights.containsKey(term)) {
+                    postingsByTerm.computeIfPresent(term, (key, postings) -> postings.without(filmId));
+                }
+            }
+        }
+        weights.forEach((term, weight) -> postingsByTerm.put(term,
+                postingsByTerm.getOrDefault(term, Postings.EMPTY).with(filmId, weight)));
+        termsByFilm.put(filmId, weights.keySet().toArray(new String[0]));
+    }
+
+    /**
+     * Id не больше limit фильмов, содержащих хотя бы одно слово запроса, по убыванию релевантности,
+     * при равенстве - по возрастанию id. Списки слов запроса обходятся слиянием по id
+     */
+    public int[] search(String query, int limit) {
+        String[] terms = tokenize(query).stream().distinct().limit(MAX_QUERY_TERMS).toArray(String[]::new);
+        Postings[] lists = new Postings[terms.length];
+        double[] idf = new double[terms.length];
+        int films = Math.max(termsByFilm.size(), 1);
+        for (int i = 0; i < terms.length; i++) {
+            lists[i] = postingsByTerm.getOrDefault(terms[i], Postings.EMPTY);
+            idf[i] = Math.log(1 + (films - lists[i].size + 0.5) / (lists[i].size + 0.5));
+        }
+        int[] positions = new int[terms.length];
+        PriorityQueue<Long> top = new PriorityQueue<>(limit + 1);
+        while (true) {
+            int filmId = Integer.MAX_VALUE;
+            for (int i = 0; i < lists.length; i++) {
+                if (positions[i] < lists[i].size) {
+                    filmId = Math.min(filmId, lists[i].ids[positions[i]]);
+                }
+            }
+            if (filmId == Integer.MAX_VALUE) {
+                break;
+            }
+            double score = 0;
+            for (int i = 0; i < lists.length; i++) {
+                if (positions[i] < lists[i].size && lists[i].ids[positions[i]] == filmId) {
+                    int weight = lists[i].weights[positions[i]];
+                    score += idf[i] * weight * (K1 + 1) / (weight + K1);
+                    positions[i]++;
+                }
+            }
+            long key = rank((float) score, filmId);
+            if (top.size() < limit) {
+                top.add(key);
+            } else if (key > top.peek()) {
+                top.poll();
+                top.add(key);
+            }
+        }
+        int[] result = new int[top.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = (int) (Integer.MAX_VALUE - (top.poll() & 0xFFFFFFFFL));
+        }
+        return result;
+    }
+
+    /**
+     * Разбиение текста на слова с приведением к нижнему регистру и заменой ё на е
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                c = Character.toLowerCase(c);
+                term.append(c == 'ё' ? 'е' : c);
+            } else if (term.length() > 0) {
+                terms.add(term.toString());
+                term.setLength(0);
+            }
+        }
+        if (term.length() > 0) {
+            terms.add(term.toString());
+        }
+        return terms;
+    }
+
+    /**
+     * Ключ рейтинга: старшие 32 бита - биты неотрицательного float, которые сравниваются
+     * так же, как сами числа, младшие - инвертированный id
+     */
+    private static long rank(float score, int id) {
+        return ((long) Float.floatToIntBits(score) << 32) | (Integer.MAX_VALUE - id);
+    }
+
+    /**
+     * Список фильмов слова. Массивы могут быть длиннее size: запись за пределами size
+     * не видна читателям этого экземпляра, поэтому дописывание в конец не требует копирования
+     */
+    private static class Postings {
+        private static final Postings EMPTY = new Postings(new int[0], new int[0], 0);
+        private final int[] ids;
+        private final int[] weights;
+        private final int size;
+
+        Postings(int[] ids, int[] weights, int size) {
+            this.ids = ids;
+            this.weights = weights;
+            this.size = size;
+        }
+
+        Postings with(int filmId, int weight) {
+            if (size == 0 || ids[size - 1] < filmId) {
+                if (size < ids.length) {
+                    ids[size] = filmId;
+                    weights[size] = weight;
+                    return new Postings(ids, weights, size + 1);
+                }
+                int capacity = Math.max(4, size * 2);
+                int[] grownIds = Arrays.copyOf(ids, capacity);
+                int[] grownWeights = Arrays.copyOf(weights, capacity);
+                grownIds[size] = filmId;
+                grownWeights[size] = weight;
+                return new Postings(grownIds, grownWeights, size + 1);
+            }
+            int index = Arrays.binarySearch(ids, 0, size, filmId);
+            if (index >= 0) {
+                if (weights[index] == weight) {
+                    return this;
+                }
+                int[] updatedIds = Arrays.copyOf(ids, size);
+                int[] updatedWeights = Arrays.copyOf(weights, size);
+                updatedWeights[index] = weight;
+                return new Postings(updatedIds, updatedWeights, size);
+            }
+            index = -index - 1;
+            int[] updatedIds = new int[size + 1];
+            int[] updatedWeights = new int[size + 1];
+            System.arraycopy(ids, 0, updatedIds, 0, index);
+            System.arraycopy(weights, 0, updatedWeights, 0, index);
+            updatedIds[index] = filmId;
+            updatedWeights[index] = weight;
+            System.arraycopy(ids, index, updatedIds, index + 1, size - index);
+            System.arraycopy(weights, index, updatedWeights, index + 1, size - index);
+            return new Postings(updatedIds, updatedWeights, size + 1);
+        }
+
+        Postings without(int filmId) {
+            int index = Arrays.binarySearch(ids, 0, size, filmId);
+            if (index < 0) {
+                return this;
+            }
+            if (size == 1) {
+                return null;
+            }
+            int[] updatedIds = new int[size - 1];
+            int[] updatedWeights = new int[size - 1];
+            System.arraycopy(ids, 0, updatedIds, 0, index);
+            System.arraycopy(weights, 0, updatedWeights, 0, index);
+            System.arraycopy(ids, index + 1, updatedIds, index, size - index - 1);
+            System.arraycopy(weights, index + 1, updatedWeights, index, size - index - 1);
+            return new Postings(updatedIds, updatedWeights, size - 1);
+        }
+    }
+}
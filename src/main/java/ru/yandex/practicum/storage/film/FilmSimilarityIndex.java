@@ -0,0 +1,196 @@
+package ru.yandex.practicum.storage.film;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Индекс похожих фильмов «с этим фильмом также лайкают» в памяти.
+ * Для каждого фильма хранится не больше TOP_K соседей с числом пользователей,
+ * лайкнувших оба фильма. Лайк меняет счётчики пар с остальными фильмами пользователя.
+ * Когда у фильма уже TOP_K соседей, новый сосед вытесняет соседа с наименьшим счётчиком
+ * и получает его счётчик плюс один (алгоритм Space-Saving), поэтому память ограничена,
+ * а счётчики могут быть завышены до следующей полной перестройки
+ */
+public class FilmSimilarityIndex {
+    public static final int TOP_K = 50;
+    private static final int MAX_EXPANSION = 1_000_000;
+    private final Map<Integer, Neighbours> neighboursByFilm = new ConcurrentHashMap<>();
+
+    /**
+     * Учёт лайка фильму filmId пользователем, который уже лайкнул фильмы likedBefore
+     */
+    public void increment(int filmId, int[] likedBefore) {
+        for (int otherId : likedBefore) {
+            if (otherId != filmId) {
+                neighbours(filmId).add(otherId, 1);
+                neighbours(otherId).add(filmId, 1);
+            }
+        }
+    }
+
+    /**
+     * Учёт удаления лайка фильма filmId пользователем, у которого остались лайки likedAfter
+     */
+    public void decrement(int filmId, int[] likedAfter) {
+        Neighbours neighbours = neighboursByFilm.get(filmId);
+        for (int otherId : likedAfter) {
+            Neighbours other = neighboursByFilm.get(otherId);
+            if (neighbours != null) {
+                neighbours.add(otherId, -1);
+            }
+            if (other != null) {
+                other.add(filmId, -1);
+            }
+        }
+    }
+
+    /**
+     * Id не больше limit фильмов, чаще всего лайкнутых вместе с filmId, по убыванию
+     * числа общих пользователей, при равенстве - по возрастанию id
+     */
+    public int[] similar(int filmId, int limit) {
+        Neighbours neighbours = neighboursByFilm.get(filmId);
+        if (neighbours == null) {
+            return new int[0];
+        }
+        int[] ranked = neighbours.ranked();
+        return ranked.length > limit ? Arrays.copyOf(ranked, limit) : ranked;
+    }
+
+    /**
+     * Полная перестройка индекса по матрице лайков.
+     * Фильмы делятся на части по числу процессоров, части считаются параллельно
+     * в общем ForkJoinPool. Для каждого фильма точные счётчики находятся сортировкой
+     * фильмов его пользователей и подсчётом подряд идущих серий
+     */
+    public void rebuild(FilmRecommendations matrix) {
+        Set<Integer> filmIds = new HashSet<>(matrix.films());
+        filmIds.addAll(neighboursByFilm.keySet());
+        int[] films = filmIds.stream().mapToInt(Integer::intValue).toArray();
+        int partitions = Runtime.getRuntime().availableProcessors();
+        IntStream.range(0, partitions).parallel().forEach(partition -> {
+            for (int i = partition; i < films.length; i += partitions) {
+                Neighbours rebuilt = count(matrix, films[i]);
+                if (rebuilt == null) {
+                    neighboursByFilm.remove(films[i]);
+                } else {
+                    neighboursByFilm.put(films[i], rebuilt);
+                }
+            }
+        });
+    }
+
+    private Neighbours count(FilmRecommendations matrix, int filmId) {
+        int[] cooccurring = new int[1024];
+        int size = 0;
+        for (int userId : matrix.users(filmId)) {
+            int[] liked = matrix.likes(userId);
+            if (size + liked.length > MAX_EXPANSION) {
+                break;
+            }
+            if (size + liked.length > cooccurring.length) {
+                cooccurring = Arrays.copyOf(cooccurring, Math.max(size + liked.length, size * 2));
+            }
+            for (int otherId : liked) {
+                if (otherId != filmId) {
+                    cooccurring[size++] = otherId;
+                }
+            }
+        }
+        Arrays.sort(cooccurring, 0, size);
+        PriorityQueue<Long> top = new PriorityQueue<>(TOP_K + 1);
+        for (int i = 0; i < size; ) {
+            int otherId = cooccurring[i];
+            int start = i;
+            while (i < size && cooccurring[i] == otherId) {
+                i++;
+            }
+            top.add(rank(i - start, otherId));
+            if (top.size() > TOP_K) {
+                top.poll();
+            }
+        }
+        if (top.isEmpty()) {
+            return null;
+        }
+        Neighbours neighbours = new Neighbours();
+        for (Long key : top) {
+            neighbours.add(id(key), (int) (key >>> 32));
+        }
+        return neighbours;
+    }
+
+    private Neighbours neighbours(int filmId) {
+        return neighboursByFilm.computeIfAbsent(filmId, id -> new Neighbours());
+    }
+
+    /**
+     * Ключ рейтинга: старшие 32 бита - число общих пользователей, младшие - инвертированный id,
+     * чтобы при равенстве выше оказывался меньший id
+     */
+    private static long rank(int count, int id) {
+        return ((long) count << 32) | (Integer.MAX_VALUE - id);
+    }
+
+    private static int id(long key) {
+        return (int) (Integer.MAX_VALUE - (key & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Соседи фильма - не больше TOP_K пар (id, счётчик) в параллельных массивах
+     */
+    private static class Neighbours {
+        private final int[] ids = new int[TOP_K];
+        private final int[] counts = new int[TOP_K];
+        private int size;
+
+        synchronized void add(int id, int delta) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    counts[i] += delta;
+                    if (counts[i] <= 0) {
+                        size--;
+                        ids[i] = ids[size];
+                        counts[i] = counts[size];
+                    }
+                    return;
+                }
+            }
+            if (delta <= 0) {
+                return;
+            }
+            if (size < TOP_K) {
+                ids[size] = id;
+                counts[size] = delta;
+                size++;
+                return;
+            }
+            int min = 0;
+            for (int i = 1; i < size; i++) {
+                if (counts[i] < counts[min]) {
+                    min = i;
+                }
+            }
+            ids[min] = id;
+            counts[min] += delta;
+        }
+
+        synchronized int[] ranked() {
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = rank(counts[i], ids[i]);
+            }
+            Arrays.sort(keys);
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = id(keys[size - 1 - i]);
+            }
+            return result;
+        }
+    }
+}
@@ -2,8 +2,11 @@ package ru.yandex.practicum.storage.film;
 
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.FilmBatchResult;
+import ru.yandex.practicum.model.FilmFilter;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс хранилища фильмов Filmorate
@@ -12,15 +15,35 @@ import java.util.List;
 public interface FilmStorage {
     List<Film> findAll();
 
+    List<Film> findPage(Integer after, Integer limit);
+
+    List<Film> findByFilter(FilmFilter filter, Integer after, Integer limit);
+
+    void streamAll(Consumer<Film> consumer);
+
     Film add(Film film);
 
+    List<FilmBatchResult> addAll(List<Film> films);
+
     Film update(Film film);
 
     Film findFilmById(Integer id);
 
+    String findRevision(Integer id);
+
+    String getRevision(Film film);
+
     Film putLike(Film film, Integer id);
 
     Film deleteLike(Integer filmId, Integer id);
 
     List<Film> findBest(Integer count);
+
+    List<Film> findRecommendations(Integer userId, Integer limit);
+
+    List<Film> findSimilar(Film film, Integer limit);
+
+    List<Film> search(String query, Integer limit);
+
+    List<Film> autocomplete(String prefix, Integer limit);
 }
\ No newline at end of file
@@ -1,87 +1,196 @@
 package ru.yandex.practicum.storage.film;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.exception.FilmNotFoundException;
 import ru.yandex.practicum.exception.ValidationException;
 import ru.yandex.practicum.model.Film;
-import ru.yandex.practicum.service.FilmService;
+import ru.yandex.practicum.model.FilmBatchResult;
+import ru.yandex.practicum.model.FilmFilter;
+import ru.yandex.practicum.model.Genre;
+import ru.yandex.practicum.service.DictionaryService;
+import ru.yandex.practicum.storage.PrefixIndex;
+import ru.yandex.practicum.storage.user.InMemoryUserStorage;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
- * Хранилище фильмов Filmorate в памяти
+ * Хранилище фильмов Filmorate в памяти.
+ * Фильмы хранятся неизменяемыми копиями в ConcurrentHashMap: изменение выполняется
+ * через compute и заменяет копию целиком, поэтому чтение не требует блокировок.
+ * Рейтинг популярности обновляется внутри compute, то есть последовательно для каждого фильма.
+ * Id выдаются подряд с единицы, это позволяет обходить фильмы по порядку id без сортировки.
+ * Названия жанров и рейтингов берутся из справочника. Включается свойством filmorate.storage=memory
  */
 @Slf4j
 @Repository("filmMemoryStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
 public class InMemoryFilmStorage implements FilmStorage {
-    private final FilmService service;
-    private final Map<Integer, Film> films;
-    private int id = 0;
+    private final Map<Integer, Film> films = new ConcurrentHashMap<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final FilmPopularityIndex popularityIndex = new FilmPopularityIndex();
+    private final FilmRecommendations recommendations = new FilmRecommendations();
+    private final FilmSimilarityIndex similarityIndex = new FilmSimilarityIndex();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    private final PrefixIndex titleIndex = new PrefixIndex();
+    private final FilmFilterIndex filterIndex = new FilmFilterIndex();
+    private final InMemoryUserStorage userStorage;
+    private final DictionaryService dictionary;
 
-    @Autowired
-    public InMemoryFilmStorage(FilmService service) {
-        this.films = new HashMap<>();
-        this.service = service;
+    public InMemoryFilmStorage(InMemoryUserStorage userStorage, DictionaryService dictionary) {
+        this.userStorage = userStorage;
+        this.dictionary = dictionary;
     }
 
     /**
      * Получение всех фильмов
      */
+    @Override
     public List<Film> findAll() {
-        log.debug("Текущее количество фильмов: {}", films.size());
-        return new ArrayList<>(films.values());
+        List<Film> filmList = new ArrayList<>(films.size());
+        streamAll(filmList::add);
+        log.debug("Текущее количество фильмов: {}", filmList.size());
+        return filmList;
+    }
+
+    /**
+     * Получение страницы фильмов с id больше after
+     */
+    @Override
+    public List<Film> findPage(Integer after, Integer limit) {
+        List<Film> filmList = new ArrayList<>(Math.min(limit, films.size()));
+        int last = lastId.get();
+        for (int id = Math.max(after, 0) + 1; id <= last && filmList.size() < limit; id++) {
+            Film film = films.get(id);
+            if (film != null) {
+                filmList.add(FilmCache.copy(film));
+            }
+        }
+        log.debug("Страница фильмов после id = {}: {}", after, filmList.size());
+        return filmList;
+    }
+
+    /**
+     * Получение страницы фильмов с id больше after, подходящих под условия отбора
+     */
+    @Override
+    public List<Film> findByFilter(FilmFilter filter, Integer after, Integer limit) {
+        int[] ids = filterIndex.filter(filter, after, limit);
+        log.debug("Отбор фильмов {} после id = {}: {}", filter, after, ids.length);
+        return findFilms(ids);
+    }
+
+    /**
+     * Последовательная выгрузка всех фильмов в порядке id
+     */
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        int last = lastId.get();
+        for (int id = 1; id <= last; id++) {
+            Film film = films.get(id);
+            if (film != null) {
+                consumer.accept(FilmCache.copy(film));
+            }
+        }
     }
 
     /**
      * Добавление фильма
      */
+    @Override
     public Film add(Film film) {
-        if (film.getReleaseDate().isBefore(LocalDate.of(1895, 12, 28))) {
-            log.warn("Ошибка валидации даты релиза: {} ", film.getReleaseDate());
-            throw new ValidationException("Ошибка валидации даты релиза");
-        } else {
-            film.setId(++id);
-            films.put(film.getId(), film);
-        }
+        checkReleaseDate(film);
+        resolveDictionaries(film);
+        film.setId(lastId.incrementAndGet());
+        film.setLikes(new HashSet<>());
+        film.setVersion(0);
+        films.compute(film.getId(), (id, old) -> {
+            popularityIndex.put(id, 0);
+            searchIndex.put(id, film.getName(), film.getDescription());
+            titleIndex.put(id, film.getName(), 0);
+            filterIndex.put(id, genreIds(film), film.getMpa().getId(), film.getReleaseDate(), film.getDuration());
+            return FilmCache.copy(film);
+        });
         log.debug("Фильм к сохранению: {}", film);
         return film;
     }
 
     /**
-     * Обновление фильма
+     * Пакетное добавление фильмов
+     */
+    @Override
+    public List<FilmBatchResult> addAll(List<Film> films) {
+        List<FilmBatchResult> results = new ArrayList<>(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            try {
+                dictionary.validate(films.get(i));
+                results.add(FilmBatchResult.created(i, add(films.get(i)).getId()));
+            } catch (ValidationException e) {
+                results.add(FilmBatchResult.failed(i, e.getMessage()));
+            } catch (RuntimeException e) {
+                results.add(FilmBatchResult.failed(i, "Ошибка записи фильма"));
+            }
+        }
+        log.debug("Пакетная загрузка фильмов: {}", films.size());
+        return results;
+    }
+
+    /**
+     * Обновление фильма. Лайки фильма не меняются
      */
+    @Override
     public Film update(Film film) {
-        log.debug("Фильм к обновлению: {}", film);
-        if (film.getReleaseDate().isBefore(LocalDate.of(1895, 12, 28))) {
-            log.warn("Дата релиза выходит за рамки допустимого");
-            throw new ValidationException("Дата релиза выходит за рамки допустимого");
-        } else if (films.containsKey(film.getId())) {
-            films.replace(film.getId(), film);
-            return film;
-        } else {
-            log.warn("Фильма с таким id не найдено");
-            throw new FilmNotFoundException(String.format("Фильм № %d не найден", id));
+        checkReleaseDate(film);
+        Film updated = films.computeIfPresent(film.getId(), (id, old) -> {
+            resolveDictionaries(film);
+            searchIndex.put(id, film.getName(), film.getDescription());
+            titleIndex.put(id, film.getName(), old.getLikes().size());
+            filterIndex.put(id, genreIds(film), film.getMpa().getId(), film.getReleaseDate(), film.getDuration());
+            Film copy = FilmCache.copy(film);
+            copy.setLikes(old.getLikes());
+            copy.setVersion(old.getVersion() + 1);
+            return copy;
+        });
+        if (updated == null) {
+            throw new FilmNotFoundException("Фильма с таким id не найдено");
         }
+        film.setLikes(new HashSet<>(updated.getLikes()));
+        film.setVersion(updated.getVersion());
+        log.debug("Фильм к обновлению: {}", film);
+        return film;
     }
 
     /**
      * Получение фильма по id
      */
+    @Override
     public Film findFilmById(Integer id) {
-        Film film = films.get(id);
-        if (film != null) {
-            log.debug("Фильм по id: {}", film);
-            return film;
-        } else {
-            log.warn("Фильма с таким id не найдено");
-            throw new FilmNotFoundException(String.format("Фильм № %d не найден", id));
-        }
+        return FilmCache.copy(get(id));
+    }
+
+    /**
+     * Получение ревизии фильма по id
+     */
+    @Override
+    public String findRevision(Integer id) {
+        return String.valueOf(get(id).getVersion());
+    }
+
+    /**
+     * Получение ревизии загруженного фильма
+     */
+    @Override
+    public String getRevision(Film film) {
+        return String.valueOf(film.getVersion());
     }
 
     /**
@@ -89,7 +198,31 @@ public class InMemoryFilmStorage implements FilmStorage {
      */
     @Override
     public Film putLike(Film film, Integer id) {
-        return null;
+        if (!userStorage.contains(id)) {
+            throw new RuntimeException("Ошибка добавления лайка");
+        }
+        Film updated = films.computeIfPresent(film.getId(), (filmId, old) -> {
+            if (old.getLikes().contains(id)) {
+                throw new RuntimeException("Ошибка добавления лайка");
+            }
+            Film copy = FilmCache.copy(old);
+            copy.getLikes().add(id);
+            copy.setVersion(old.getVersion() + 1);
+            popularityIndex.increment(filmId);
+            titleIndex.setScore(filmId, copy.getLikes().size());
+            int[] likedBefore = recommendations.put(filmId, id);
+            if (likedBefore != null) {
+                similarityIndex.increment(filmId, likedBefore);
+            }
+            return copy;
+        });
+        if (updated == null) {
+            throw new RuntimeException("Ошибка добавления лайка");
+        }
+        film.getLikes().add(id);
+        film.setVersion(updated.getVersion());
+        log.debug("Установка лайка у фильма с id = {}", film.getId());
+        return film;
     }
 
     /**
@@ -97,7 +230,24 @@ public class InMemoryFilmStorage implements FilmStorage {
      */
     @Override
     public Film deleteLike(Integer filmId, Integer id) {
-        return service.deleteLike(findFilmById(filmId), id);
+        get(filmId);
+        Film updated = films.computeIfPresent(filmId, (key, old) -> {
+            if (!old.getLikes().contains(id)) {
+                throw new RuntimeException("Ошибка удаления лайка");
+            }
+            Film copy = FilmCache.copy(old);
+            copy.getLikes().remove(id);
+            copy.setVersion(old.getVersion() + 1);
+            popularityIndex.decrement(key);
+            titleIndex.setScore(key, copy.getLikes().size());
+            int[] likedAfter = recommendations.remove(key, id);
+            if (likedAfter != null) {
+                similarityIndex.decrement(key, likedAfter);
+            }
+            return copy;
+        });
+        log.debug("Удаление лайка у фильма с id = {}", filmId);
+        return FilmCache.copy(updated);
     }
 
     /**
@@ -105,6 +255,112 @@ public class InMemoryFilmStorage implements FilmStorage {
      */
     @Override
     public List<Film> findBest(Integer count) {
-        return service.findBest(count, findAll());
+        log.debug("Получение {} популярных фильмов", count);
+        List<Film> filmList = new ArrayList<>(count);
+        for (Integer id : popularityIndex.top(count)) {
+            Film film = films.get(id);
+            if (film != null) {
+                filmList.add(FilmCache.copy(film));
+            }
+        }
+        return filmList;
+    }
+
+    /**
+     * Получение рекомендованных пользователю фильмов по лайкам похожих пользователей
+     */
+    @Override
+    public List<Film> findRecommendations(Integer userId, Integer limit) {
+        int[] ids = recommendations.recommend(userId, limit);
+        log.debug("Рекомендации фильмов пользователя {}: {}", userId, ids.length);
+        return findFilms(ids);
+    }
+
+    /**
+     * Получение фильмов, которые чаще всего лайкают вместе с данным
+     */
+    @Override
+    public List<Film> findSimilar(Film film, Integer limit) {
+        get(film.getId());
+        int[] ids = similarityIndex.similar(film.getId(), limit);
+        log.debug("Похожие фильмы для фильма {}: {}", film.getId(), ids.length);
+        return findFilms(ids);
+    }
+
+    /**
+     * Полнотекстовый поиск фильмов по названию и описанию
+     */
+    @Override
+    public List<Film> search(String query, Integer limit) {
+        int[] ids = searchIndex.search(query, limit);
+        log.debug("Поиск фильмов по запросу '{}': {}", query, ids.length);
+        return findFilms(ids);
+    }
+
+    /**
+     * Автодополнение названий: самые популярные фильмы с названием, начинающимся с prefix
+     */
+    @Override
+    public List<Film> autocomplete(String prefix, Integer limit) {
+        return findFilms(titleIndex.top(prefix, limit));
+    }
+
+    /**
+     * Получение хранимой копии фильма по id
+     */
+    private Film get(Integer id) {
+        Film film = films.get(id);
+        if (film == null) {
+            log.warn("Фильма с таким id не найдено");
+            throw new FilmNotFoundException(String.format("Фильм с id = %d не найден", id));
+        }
+        return film;
+    }
+
+    /**
+     * Получение фильмов по списку id с сохранением порядка списка
+     */
+    private List<Film> findFilms(int[] ids) {
+        List<Film> filmList = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Film film = films.get(id);
+            if (film != null) {
+                filmList.add(FilmCache.copy(film));
+            }
+        }
+        return filmList;
+    }
+
+    /**
+     * Id жанров фильма
+     */
+    private static List<Integer> genreIds(Film film) {
+        List<Integer> ids = new ArrayList<>(film.getGenres().size());
+        for (Genre genre : film.getGenres()) {
+            ids.add(genre.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Замена жанров и рейтинга фильма значениями из справочника
+     */
+    private void resolveDictionaries(Film film) {
+        film.setMpa(dictionary.getMpa(film.getMpa().getId()));
+        TreeSet<Genre> genres = new TreeSet<>();
+        for (Genre genre : film.getGenres()) {
+            genres.add(dictionary.getGenre(genre.getId()));
+        }
+        film.setGenres(genres);
+    }
+
+    /**
+     * Валидация даты релиза
+     */
+    private void checkReleaseDate(Film film) {
+        if (film.getReleaseDate().isBefore(LocalDate.of(1895, 12, 28))) {
+            log.warn("Ошибка валидации даты релиза: {} ", film.getReleaseDate());
+            throw new ValidationException("Ошибка валидации даты релиза");
+        }
     }
 }
@@ -0,0 +1,308 @@
+package ru.yandex.practicum.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.model.Film;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Буфер отложенной записи лайков.
+ * Лайк считается принятым после попадания в буфер, а в таблицу LIKES
+ * буфер записывается пакетами по расписанию или при накоплении flushSize операций.
+ * Лайк и его отмена до записи взаимно уничтожаются.
+ * Если в буфере capacity операций, вызывающий поток сам записывает буфер в базу.
+ * Если запись не удалась, операции возвращаются в очередь и записываются следующим вызовом flush.
+ */
+@Slf4j
+@Component
+public class LikeWriteBehindBuffer {
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FilmCache filmCache;
+    private final boolean enabled;
+    private final long flushIntervalMs;
+    private final int flushSize;
+    private final int capacity;
+    private final Map<Integer, Map<Integer, Boolean>> pending = new ConcurrentHashMap<>();
+    private volatile Map<Integer, Map<Integer, Boolean>> inFlight = Map.of();
+    private volatile Map<Integer, Map<Integer, Boolean>> written = Map.of();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong restores = new AtomicLong();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private ScheduledExecutorService scheduler;
+
+    public LikeWriteBehindBuffer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                 FilmCache filmCache,
+                                 @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                                 @Value("${filmorate.likes.write-behind.flush-interval-ms:500}") long flushIntervalMs,
+                                 @Value("${filmorate.likes.write-behind.flush-size:1000}") int flushSize,
+                                 @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.filmCache = filmCache;
+        this.enabled = enabled;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushSize = flushSize;
+        this.capacity = capacity;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "like-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Отложенная запись лайков включена: интервал {} мс, пакет {}, ёмкость {}",
+                flushIntervalMs, flushSize, capacity);
+    }
+
+    /**
+     * Запись оставшихся лайков при остановке приложения
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushIntervalMs * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        log.info("Буфер лайков записан при остановке");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Постановка лайка (liked = true) или его отмены (liked = false) в буфер.
+     * Возвращает false, если операция ничего не меняет
+     */
+    public boolean enqueue(int filmId, int userId, boolean liked) {
+        while (size.get() >= capacity) {
+            flush();
+        }
+        boolean[] changed = new boolean[1];
+        pending.compute(filmId, (id, ops) -> {
+            Map<Integer, Boolean> filmOps = ops == null ? new HashMap<>() : ops;
+            Boolean old = filmOps.get(userId);
+            if (old == null) {
+                filmOps.put(userId, liked);
+                size.incrementAndGet();
+                changed[0] = true;
+            } else if (old != liked) {
+                filmOps.remove(userId);
+                size.decrementAndGet();
+                changed[0] = true;
+            }
+            return filmOps.isEmpty() ? null : filmOps;
+        });
+        if (size.get() >= flushSize && scheduler != null) {
+            scheduler.execute(this::flushQuietly);
+        }
+        return changed[0];
+    }
+
+    /**
+     * Применение незаписанных операций к лайкам фильма.
+     * Очередь читается раньше записываемой и последней записанной порций: операция, которую запись
+     * забрала из очереди после её чтения, к этому моменту уже лежит в одной из порций.
+     * Применяются операции от старых к новым, повторное применение одной операции ничего не меняет.
+     * Последняя записанная порция применяется к лайкам, прочитанным из базы до её фиксации.
+     * Если за время чтения порция вернулась в очередь после ошибки записи, чтение повторяется
+     */
+    public Film applyPending(Film film) {
+        Map<Integer, Boolean> queued = new HashMap<>();
+        Map<Integer, Boolean> writing;
+        long restored;
+        do {
+            restored = restores.get();
+            queued.clear();
+            pending.computeIfPresent(film.getId(), (id, ops) -> {
+                queued.putAll(ops);
+                return ops;
+            });
+            writing = inFlight.get(film.getId());
+        } while (restored != restores.get());
+        apply(film, written.get(film.getId()));
+        apply(film, writing);
+        apply(film, queued);
+        return film;
+    }
+
+    /**
+     * Проверка наличия незаписанных операций с лайками фильма
+     */
+    public boolean hasPending(int filmId) {
+        return pending.containsKey(filmId) || inFlight.containsKey(filmId);
+    }
+
+    /**
+     * Количество незаписанных операций
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Запись накопленных операций в таблицу LIKES одной транзакцией.
+     * Операции фильма переносятся из очереди в записываемую порцию внутри compute,
+     * поэтому читатель всегда находит их в одном из мест. После записи фильмы порции
+     * удаляются из кэша, а сама порция остаётся видимой до следующего вызова flush.
+     * Если запись не удалась, порция возвращается в очередь, а ошибка передаётся вызывающему
+     */
+    public void flush() {
+        flushLock.lock();
+        Map<Integer, Map<Integer, Boolean>> drained = new ConcurrentHashMap<>();
+        inFlight = drained;
+        try {
+            for (Integer filmId : pending.keySet()) {
+                pending.computeIfPresent(filmId, (id, ops) -> {
+                    drained.put(id, ops);
+                    size.addAndGet(-ops.size());
+                    return null;
+                });
+            }
+            if (drained.isEmpty()) {
+                written = Map.of();
+                return;
+            }
+            try {
+                write(drained);
+            } catch (RuntimeException e) {
+                restore(drained);
+                throw e;
+            }
+            drained.keySet().forEach(filmCache::invalidate);
+            written = drained;
+        } finally {
+            inFlight = Map.of();
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Возврат незаписанной порции в очередь. Операции, поставленные в очередь
+     * во время записи, новее операций порции и заменяют их
+     */
+    private void restore(Map<Integer, Map<Integer, Boolean>> drained) {
+        drained.forEach((filmId, drainedOps) -> pending.compute(filmId, (id, ops) -> {
+            Map<Integer, Boolean> merged = new HashMap<>(drainedOps);
+            if (ops != null) {
+                merged.putAll(ops);
+            }
+            size.addAndGet(merged.size() - (ops == null ? 0 : ops.size()));
+            return merged;
+        }));
+        restores.incrementAndGet();
+        log.warn("Операции с лайками {} фильмов возвращены в очередь записи", drained.size());
+    }
+
+    /**
+     * Выполнение действия, пока буфер не записывается в базу
+     */
+    public <T> T withoutFlush(Supplier<T> action) {
+        flushLock.lock();
+        try {
+            return action.get();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка записи буфера лайков", e);
+        }
+    }
+
+    private void write(Map<Integer, Map<Integer, Boolean>> drained) {
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        List<Object[]> films = new ArrayList<>(drained.size());
+        drained.forEach((filmId, ops) -> {
+            films.add(new Object[] {filmId});
+            ops.forEach((userId, liked) -> (liked ? inserts : deletes).add(new Object[] {filmId, userId}));
+        });
+        String insertQuery = "MERGE INTO LIKES (FILM_ID, USER_ID) KEY (FILM_ID, USER_ID) VALUES (?, ?)";
+        String deleteQuery = "DELETE FROM LIKES WHERE FILM_ID = ? AND USER_ID = ?";
+        String countQuery = "UPDATE FILMS F SET LIKES_COUNT = " +
+                "(SELECT COUNT(*) FROM LIKES L WHERE L.FILM_ID = F.FILM_ID), " +
+                "ROW_VERSION = ROW_VERSION + 1 WHERE FILM_ID = ?";
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(insertQuery, inserts);
+                jdbcTemplate.batchUpdate(deleteQuery, deletes);
+                jdbcTemplate.batchUpdate(countQuery, films);
+            });
+            log.debug("Записано лайков: {}, отмен: {}", inserts.size(), deletes.size());
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Ошибка пакетной записи лайков, запись по одному: {}", e.getMessage());
+            writeOneByOne(insertQuery, inserts, drained);
+            writeOneByOne(deleteQuery, deletes, drained);
+            jdbcTemplate.batchUpdate(countQuery, films);
+        }
+    }
+
+    /**
+     * Запись операций по одной. Операция, нарушающая ограничения базы, никогда не запишется,
+     * поэтому она удаляется из порции, а остальные ошибки прерывают запись всей порции
+     */
+    private void writeOneByOne(String sqlQuery, List<Object[]> rows, Map<Integer, Map<Integer, Boolean>> drained) {
+        for (Object[] row : rows) {
+            try {
+                jdbcTemplate.update(sqlQuery, row);
+            } catch (DataIntegrityViolationException e) {
+                log.error("Операция с лайком фильма {} пользователя {} отброшена: {}", row[0], row[1], e.getMessage());
+                drained.computeIfPresent((Integer) row[0], (filmId, ops) -> {
+                    Map<Integer, Boolean> rest = new HashMap<>(ops);
+                    rest.remove((Integer) row[1]);
+                    return rest.isEmpty() ? null : rest;
+                });
+            }
+        }
+    }
+
+    private static void apply(Film film, Map<Integer, Boolean> ops) {
+        if (ops == null) {
+            return;
+        }
+        ops.forEach((userId, liked) -> {
+            if (liked) {
+                film.getLikes().add(userId);
+            } else {
+                film.getLikes().remove(userId);
+            }
+        });
+    }
+}
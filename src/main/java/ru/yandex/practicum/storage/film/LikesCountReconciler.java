@@ -0,0 +1,46 @@
+package ru.yandex.practicum.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Сверка счётчиков лайков и рейтинга популярности фильмов с таблицей LIKES
+ * и перестройка индекса похожих фильмов
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
+@RequiredArgsConstructor
+public class LikesCountReconciler {
+    private final FilmDbStorage storage;
+
+    /**
+     * Сверка при запуске приложения и по расписанию
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${filmorate.likes.reconcile-cron:0 0 4 * * *}")
+    public void reconcile() {
+        int fixed = storage.reconcileLikesCount();
+        if (fixed > 0) {
+            log.warn("Счётчики лайков расходились с таблицей LIKES у {} фильмов", fixed);
+        }
+        int fixedIndex = storage.verifyPopularityIndex();
+        if (fixedIndex > 0) {
+            log.warn("Рейтинг популярности расходился с таблицей LIKES у {} фильмов", fixedIndex);
+        }
+    }
+
+    /**
+     * Полная перестройка индекса похожих фильмов по расписанию.
+     * Исправляет завышенные счётчики соседей, накопленные при вытеснении
+     */
+    @Scheduled(cron = "${filmorate.films.similarity-rebuild-cron:0 30 4 * * *}")
+    public void rebuildSimilarityIndex() {
+        storage.rebuildSimilarityIndex();
+    }
+}
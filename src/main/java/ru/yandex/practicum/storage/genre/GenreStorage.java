@@ -21,13 +21,13 @@ public class GenreStorage {
      * Получение жанра по ID
      */
     public Genre getById(Integer id) {
-        String sqlQuery = "SELECT * FROM GENRES WHERE GENRE_ID = " + id;
+        String sqlQuery = "SELECT * FROM GENRES WHERE GENRE_ID = ?";
         List<Genre> genreList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> {
             Genre genre = new Genre();
             genre.setId(rs.getInt("GENRE_ID"));
             genre.setName(rs.getString("GENRE_NAME"));
             return genre;
-        });
+        }, id);
         if (genreList.isEmpty()) {
             log.warn("Жанра с таким id не найдено");
             throw new RuntimeException(String.format("Жанр с id = %d не найден", id));
@@ -21,13 +21,13 @@ public class MPAStorage {
      * Получение рейтинга по id
      */
     public MPA getById(Integer id) {
-        String sqlQuery = "SELECT * FROM MPA WHERE MPA_ID = " + id;
+        String sqlQuery = "SELECT * FROM MPA WHERE MPA_ID = ?";
         List<MPA> mpaList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> {
             MPA mpa = new MPA();
             mpa.setId(rs.getInt("MPA_ID"));
             mpa.setName(rs.getString("MPA_NAME"));
             return mpa;
-        });
+        }, id);
         if (mpaList.isEmpty()) {
             log.warn("Рейтинга с таким id не найдено");
             throw new RuntimeException(String.format("Рейтинг с id = %d не найден", id));
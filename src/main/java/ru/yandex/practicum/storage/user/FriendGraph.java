@@ -0,0 +1,162 @@
+package ru.yandex.practicum.storage.user;
+
+import ru.yandex.practicum.storage.SortedIntArrays;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Граф заявок в друзья в памяти.
+ * Для каждого пользователя хранятся прямые (кому он отправил заявку) и обратные
+ * (кто отправил заявку ему) связи - отсортированные массивы int без упаковки в Integer.
+ * Массивы не изменяются после публикации, поэтому чтение не требует блокировок.
+ * Изменение связи захватывает полосы блокировок обоих пользователей в порядке номеров полос,
+ * так что прямой и обратный списки всегда меняются вместе
+ */
+class FriendGraph {
+    private static final int STRIPES = 256;
+    private static final int MAX_EXPANSION = 100_000;
+    private final Map<Integer, int[]> outgoing = new ConcurrentHashMap<>();
+    private final Map<Integer, int[]> incoming = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[STRIPES];
+
+    FriendGraph() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Id пользователей, которым userId отправил заявку, по возрастанию
+     */
+    int[] friends(int userId) {
+        return outgoing.getOrDefault(userId, SortedIntArrays.EMPTY);
+    }
+
+    /**
+     * Id пользователей, отправивших заявку userId, по возрастанию
+     */
+    int[] followers(int userId) {
+        return incoming.getOrDefault(userId, SortedIntArrays.EMPTY);
+    }
+
+    /**
+     * Проверка наличия заявки от userId к friendId
+     */
+    boolean contains(int userId, int friendId) {
+        return SortedIntArrays.contains(friends(userId), friendId);
+    }
+
+    /**
+     * Id пользователей, которым отправили заявку и userId, и otherId, по возрастанию
+     */
+    int[] commonFriends(int userId, int otherId) {
+        return SortedIntArrays.intersect(friends(userId), friends(otherId));
+    }
+
+    /**
+     * Рекомендации друзей для userId: пользователи, которым отправили заявку друзья userId,
+     * по убыванию числа таких общих друзей, при равенстве - по возрастанию id.
+     * Сам пользователь и те, кому он уже отправил заявку, исключаются.
+     * Второй круг ограничен MAX_EXPANSION связями, id второго круга собираются в массив,
+     * сортируются и подсчитываются подряд идущими сериями, а лучшие limit выбираются
+     * кучей размера limit, поэтому время не зависит от общего числа пользователей
+     */
+    int[] suggestions(int userId, int limit) {
+        int[] friends = friends(userId);
+        int[] candidates = new int[1024];
+        int size = 0;
+        for (int friendId : friends) {
+            int[] second = friends(friendId);
+            int count = Math.min(second.length, MAX_EXPANSION - size);
+            if (size + count > candidates.length) {
+                candidates = Arrays.copyOf(candidates, Math.min(MAX_EXPANSION, Math.max(size + count, size * 2)));
+            }
+            System.arraycopy(second, 0, candidates, size, count);
+            size += count;
+            if (size == MAX_EXPANSION) {
+                break;
+            }
+        }
+        Arrays.sort(candidates, 0, size);
+        PriorityQueue<Long> top = new PriorityQueue<>(limit + 1);
+        for (int i = 0; i < size; ) {
+            int candidate = candidates[i];
+            int start = i;
+            while (i < size && candidates[i] == candidate) {
+                i++;
+            }
+            if (candidate == userId || SortedIntArrays.contains(friends, candidate)) {
+                continue;
+            }
+            top.add(rank(i - start, candidate));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        int[] result = new int[top.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = (int) (Integer.MAX_VALUE - (top.poll() & 0xFFFFFFFFL));
+        }
+        return result;
+    }
+
+    /**
+     * Ключ рейтинга: старшие 32 бита - число общих друзей, младшие - инвертированный id,
+     * чтобы при равенстве выше оказывался меньший id
+     */
+    private static long rank(int mutual, int id) {
+        return ((long) mutual << 32) | (Integer.MAX_VALUE - id);
+    }
+
+    /**
+     * Добавление заявки от userId к friendId. Возвращает false, если заявка уже есть
+     */
+    boolean add(int userId, int friendId) {
+        Object first = locks[Math.min(stripe(userId), stripe(friendId))];
+        Object second = locks[Math.max(stripe(userId), stripe(friendId))];
+        synchronized (first) {
+            synchronized (second) {
+                int[] updated = SortedIntArrays.insert(friends(userId), friendId);
+                if (updated == null) {
+                    return false;
+                }
+                outgoing.put(userId, updated);
+                incoming.put(friendId, SortedIntArrays.insert(followers(friendId), userId));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Удаление заявок между userId и friendId в обе стороны.
+     * Возвращает false, если заявки от userId к friendId не было
+     */
+    boolean remove(int userId, int friendId) {
+        Object first = locks[Math.min(stripe(userId), stripe(friendId))];
+        Object second = locks[Math.max(stripe(userId), stripe(friendId))];
+        synchronized (first) {
+            synchronized (second) {
+                boolean removed = unlink(userId, friendId);
+                unlink(friendId, userId);
+                return removed;
+            }
+        }
+    }
+
+    private boolean unlink(int userId, int friendId) {
+        int[] updated = SortedIntArrays.delete(friends(userId), friendId);
+        if (updated == null) {
+            return false;
+        }
+        outgoing.put(userId, updated);
+        incoming.put(friendId, SortedIntArrays.delete(followers(friendId), userId));
+        return true;
+    }
+
+    private static int stripe(int id) {
+        return id & (STRIPES - 1);
+    }
+}
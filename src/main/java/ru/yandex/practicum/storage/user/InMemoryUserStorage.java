@@ -1,104 +1,173 @@
 package ru.yandex.practicum.storage.user;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.exception.UserNotFoundException;
-import ru.yandex.practicum.exception.ValidationException;
+import ru.yandex.practicum.model.FriendStatus;
 import ru.yandex.practicum.model.User;
-import ru.yandex.practicum.service.UserService;
+import ru.yandex.practicum.storage.PrefixIndex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
- * Хранилище пользователей Filmorate в памяти
+ * Хранилище пользователей Filmorate в памяти.
+ * Пользователи хранятся неизменяемыми копиями в ConcurrentHashMap: изменение
+ * выполняется через compute и заменяет копию целиком, поэтому чтение не требует
+ * блокировок и никогда не видит пользователя в промежуточном состоянии.
+ * Заявки в друзья хранятся отдельно в FriendGraph, список друзей получается за O(число друзей).
+ * Id выдаются подряд с единицы, это позволяет обходить пользователей по порядку id
+ * без сортировки. Включается свойством filmorate.storage=memory
  */
 @Slf4j
 @Repository("userMemoryStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
 public class InMemoryUserStorage implements UserStorage {
-    private final UserService service;
-    private final HashMap<Integer, User> users;
-    private int id = 0;
-
-    @Autowired
-    public InMemoryUserStorage(UserService service) {
-        this.users = new HashMap<>();
-        this.service = service;
-    }
+    private final Map<Integer, User> users = new ConcurrentHashMap<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final FriendGraph friendGraph = new FriendGraph();
+    private final PrefixIndex loginIndex = new PrefixIndex();
 
     /**
      * Получение всех пользователей
      */
+    @Override
     public List<User> findAll() {
-        log.debug("Текущее количество пользователей: {}", users.size());
-        return new ArrayList<>(users.values());
+        List<User> userList = new ArrayList<>(users.size());
+        streamAll(userList::add);
+        log.debug("Текущее количество пользователей: {}", userList.size());
+        return userList;
+    }
+
+    /**
+     * Получение страницы пользователей с id больше after
+     */
+    @Override
+    public List<User> findPage(Integer after, Integer limit) {
+        List<User> userList = new ArrayList<>(Math.min(limit, users.size()));
+        int last = lastId.get();
+        for (int id = Math.max(after, 0) + 1; id <= last && userList.size() < limit; id++) {
+            User user = users.get(id);
+            if (user != null) {
+                userList.add(copy(user));
+            }
+        }
+        log.debug("Страница пользователей после id = {}: {}", after, userList.size());
+        return userList;
+    }
+
+    /**
+     * Последовательная выгрузка всех пользователей в порядке id
+     */
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        int last = lastId.get();
+        for (int id = 1; id <= last; id++) {
+            User user = users.get(id);
+            if (user != null) {
+                consumer.accept(copy(user));
+            }
+        }
     }
 
     /**
      * Создание пользователя
      */
+    @Override
     public User create(User user) {
-        if (user.getLogin().contains(" ")) {
-            log.warn("Ошибка валидации логина");
-            throw new ValidationException("Ошибка валидации логина");
-        } else {
-            log.debug("Пользователь к сохранению: {}", user);
-            if (user.getName() == null || user.getName().isBlank()) {
-                user.setName(user.getLogin());
-            }
-            user.setId(++id);
-            users.put(user.getId(), user);
+        if (user.getName() == null || user.getName().isBlank()) {
+            user.setName(user.getLogin());
         }
+        user.setId(lastId.incrementAndGet());
+        user.setFriends(new HashMap<>());
+        user.setVersion(0);
+        users.put(user.getId(), snapshot(user, 0));
+        loginIndex.put(user.getId(), user.getLogin(), 0);
+        log.debug("Пользователь к сохранению: {}", user);
         return user;
     }
 
     /**
-     * Обновление пользователя
+     * Обновление пользователя. Список друзей не меняется
      */
+    @Override
     public User update(User user) {
-        log.debug("Пользователь к обновлению: {}", user);
-        if (user.getLogin().contains(" ")) {
-            log.warn("Ошибка валидации логина", user.getLogin());
-            throw new ValidationException("Ошибка валидации логина");
-        } else if (users.containsKey(user.getId())) {
-            if (user.getName().isBlank()) {
-                user.setName(user.getLogin());
-            }
-            users.put(user.getId(), user);
-            return user;
-        } else {
-            log.warn("Пользователя с таким id не найдено");
-            throw new ValidationException("Пользователя с таким id не найдено");
+        User updated = users.computeIfPresent(user.getId(), (id, old) -> {
+            loginIndex.put(id, user.getLogin(), friendGraph.followers(id).length);
+            return snapshot(user, old.getVersion() + 1);
+        });
+        if (updated == null) {
+            throw new UserNotFoundException(
+                    String.format("Пользователя с id = %d не найдено", user.getId()));
         }
+        log.debug("Пользователь к обновлению: {}", user);
+        return user;
     }
 
     /**
      * Получение пользователя по id
      */
+    @Override
     public User findUserById(Integer id) {
-        log.debug("Пользователь по id: {}", users.get(id));
-        return users.values().stream()
-                .filter(u -> u.getId() == (id))
-                .findFirst()
-                .orElseThrow(() -> new UserNotFoundException(String.format("Пользователь № %d не найден", id)));
+        return copy(get(id));
     }
 
     /**
-     * Добавление в друзья
+     * Получение ревизии пользователя по id
+     */
+    @Override
+    public String findRevision(Integer id) {
+        return String.valueOf(get(id).getVersion());
+    }
+
+    /**
+     * Получение ревизии загруженного пользователя
+     */
+    @Override
+    public String getRevision(User user) {
+        return String.valueOf(user.getVersion());
+    }
+
+    /**
+     * Добавление в друзья. Версия меняется после графа, чтобы новая ревизия
+     * не выдавалась вместе со старым списком друзей
      */
     @Override
     public User addFriend(User user, User friend) {
-        return service.addFriend(user, friend);
+        get(user.getId());
+        get(friend.getId());
+        if (!friendGraph.add(user.getId(), friend.getId())) {
+            throw new IllegalStateException("Заявка в друзья уже существует");
+        }
+        bumpVersion(user.getId());
+        loginIndex.setScore(friend.getId(), friendGraph.followers(friend.getId()).length);
+        log.debug("Добавление в друзья пользователя с id {}", friend);
+        friend.getFriends().put(user.getId(), FriendStatus.НЕПОДТВЕРЖДЕННАЯ);
+        return user;
     }
 
     /**
-     * Удаление из друзей
+     * Удаление из друзей. Удаляются заявки в обе стороны
      */
     @Override
     public User deleteFriend(User user, User friend) {
-        return service.deleteFriend(user, friend);
+        if (!friendGraph.remove(user.getId(), friend.getId())) {
+            throw new RuntimeException("Ошибка удаления из друзей");
+        }
+        bumpVersion(user.getId());
+        bumpVersion(friend.getId());
+        loginIndex.setScore(user.getId(), friendGraph.followers(user.getId()).length);
+        loginIndex.setScore(friend.getId(), friendGraph.followers(friend.getId()).length);
+        log.debug("Удаление из друзей пользователя c id {}", friend);
+        user.getFriends().remove(friend.getId());
+        return user;
     }
 
     /**
@@ -106,19 +175,125 @@ public class InMemoryUserStorage implements UserStorage {
      */
     @Override
     public List<User> getFriends(User user) {
-        return service.getFriends(user, findAll());
+        get(user.getId());
+        List<User> friends = findUsers(friendGraph.friends(user.getId()));
+        log.debug("Получение списка друзей {}", friends);
+        return friends;
+    }
+
+    /**
+     * Получение страницы друзей с id больше after
+     */
+    @Override
+    public List<User> getFriendsPage(User user, Integer after, Integer limit) {
+        get(user.getId());
+        int[] friendIds = friendGraph.friends(user.getId());
+        int from = Arrays.binarySearch(friendIds, after);
+        from = from >= 0 ? from + 1 : -from - 1;
+        int to = (int) Math.min((long) from + limit, friendIds.length);
+        List<User> friends = findUsers(Arrays.copyOfRange(friendIds, from, to));
+        log.debug("Страница друзей пользователя {} после id = {}: {}", user.getId(), after, friends.size());
+        return friends;
     }
 
     /**
-     * Получение общих друзей
+     * Получение общих друзей. Id общих друзей находятся пересечением
+     * отсортированных массивов друзей, затем пользователи получаются одним проходом по ним
      */
     @Override
     public List<User> getCommonFriends(User user1, User user2) {
-        List<Integer> commonIds = service.getCommonFriends(user1, user2);
-        List<User> commonFriends = new ArrayList<>();
-        for (Integer i : commonIds) {
-            commonFriends.add(findUserById(i));
-        }
+        get(user1.getId());
+        get(user2.getId());
+        List<User> commonFriends = findUsers(friendGraph.commonFriends(user1.getId(), user2.getId()));
+        log.debug("Список общих друзей пользователей {} и {}: {}", user1, user2, commonFriends);
         return commonFriends;
     }
-}
\ No newline at end of file
+
+    /**
+     * Получение рекомендаций друзей по числу общих друзей
+     */
+    @Override
+    public List<User> getSuggestions(User user, Integer limit) {
+        get(user.getId());
+        List<User> suggestions = findUsers(friendGraph.suggestions(user.getId(), limit));
+        log.debug("Рекомендации друзей пользователя {}: {}", user.getId(), suggestions.size());
+        return suggestions;
+    }
+
+    /**
+     * Автодополнение логинов: пользователи с логином, начинающимся с prefix,
+     * по убыванию числа входящих заявок в друзья
+     */
+    @Override
+    public List<User> autocomplete(String prefix, Integer limit) {
+        return findUsers(loginIndex.top(prefix, limit));
+    }
+
+    /**
+     * Проверка существования пользователя
+     */
+    public boolean contains(int id) {
+        return users.containsKey(id);
+    }
+
+    /**
+     * Получение хранимой копии пользователя по id
+     */
+    private User get(Integer id) {
+        User user = users.get(id);
+        if (user == null) {
+            throw new UserNotFoundException(String.format("Пользователя с id = %d не найдено", id));
+        }
+        return user;
+    }
+
+    /**
+     * Получение пользователей по списку id с сохранением порядка списка
+     */
+    private List<User> findUsers(int[] ids) {
+        List<User> userList = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            User user = users.get(id);
+            if (user != null) {
+                userList.add(copy(user));
+            }
+        }
+        return userList;
+    }
+
+    /**
+     * Увеличение версии пользователя после изменения списка друзей
+     */
+    private void bumpVersion(int id) {
+        users.computeIfPresent(id, (key, old) -> snapshot(old, old.getVersion() + 1));
+    }
+
+    /**
+     * Хранимая копия пользователя без списка друзей
+     */
+    private static User snapshot(User user, long version) {
+        User copy = new User();
+        copy.setId(user.getId());
+        copy.setEmail(user.getEmail());
+        copy.setLogin(user.getLogin());
+        copy.setName(user.getName());
+        copy.setBirthday(user.getBirthday());
+        copy.setFriends(Map.of());
+        copy.setVersion(version);
+        return copy;
+    }
+
+    /**
+     * Копия пользователя для выдачи со списком друзей из графа
+     */
+    private User copy(User user) {
+        User copy = snapshot(user, user.getVersion());
+        int[] friendIds = friendGraph.friends(user.getId());
+        Map<Integer, FriendStatus> friends = new HashMap<>(friendIds.length * 2);
+        for (int friendId : friendIds) {
+            friends.put(friendId, FriendStatus.НЕПОДТВЕРЖДЕННАЯ);
+        }
+        copy.setFriends(friends);
+        return copy;
+    }
+}
@@ -1,68 +1,102 @@
 package ru.yandex.practicum.storage.user;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.annotation.Primary;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.exception.UserNotFoundException;
 import ru.yandex.practicum.model.FriendStatus;
 import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.storage.IdBlockAllocator;
+import ru.yandex.practicum.storage.PrefixIndex;
 
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
- * Хранилище пользователей Filmorate в базе данных
+ * Хранилище пользователей Filmorate в базе данных. Используется по умолчанию или при filmorate.storage=db
  */
 @Slf4j
 @Repository("userDbStorage")
-@Primary
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
 public class UserDbStorage implements UserStorage {
+    private static final int STREAM_CHUNK_SIZE = 500;
+    private static final String USERS_WITH_FRIENDS_QUERY = "SELECT U.*, F.FRIEND_ID, F.FRIEND_STATUS FROM USERS U " +
+            "LEFT JOIN FRIENDS F ON F.USER_ID = U.USER_ID ORDER BY U.USER_ID";
     private JdbcTemplate jdbcTemplate;
-    private Integer idCounter = 0;
+    private final IdBlockAllocator idAllocator;
+    private final FriendGraph friendGraph = new FriendGraph();
+    private final PrefixIndex loginIndex = new PrefixIndex();
 
     public UserDbStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.idAllocator = new IdBlockAllocator(jdbcTemplate, "USERS_ID_SEQ", "USERS", "USER_ID");
     }
 
     /**
-     * Получение всех пользователей
+     * Загрузка графа заявок в друзья для рекомендаций из таблицы FRIENDS
+     * и индекса автодополнения логинов из таблицы USERS
      */
-    public List<User> findAll() {
-        String sqlQuery = "SELECT * FROM USERS";
-        List<User> userList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> {
-            User user = new User();
-            Map<Integer, FriendStatus> friends = new HashMap<>();
-            user.setId(rs.getInt("USER_ID"));
-            user.setEmail(rs.getString("USER_EMAIL"));
-            user.setLogin(rs.getString("USER_LOGIN"));
-            user.setName(rs.getString("USER_NAME"));
-            user.setBirthday(rs.getDate("BIRTHDAY").toLocalDate());
-            SqlRowSet userRows = jdbcTemplate.queryForRowSet(
-                    "SELECT * FROM FRIENDS WHERE USER_ID = ?", user.getId());
-            while (userRows.next()) {
-                friends.put(userRows.getInt("FRIEND_ID"),
-                        FriendStatus.valueOf(userRows.getString("FRIEND_STATUS")));
-            }
-            user.setFriends(friends);
-            return user;
+    @PostConstruct
+    public void initIndexes() {
+        jdbcTemplate.query("SELECT USER_ID, FRIEND_ID FROM FRIENDS ORDER BY USER_ID, FRIEND_ID", rs -> {
+            friendGraph.add(rs.getInt("USER_ID"), rs.getInt("FRIEND_ID"));
+        });
+        log.debug("Граф друзей загружен");
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT USER_ID, USER_LOGIN FROM USERS",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_CHUNK_SIZE);
+            return ps;
+        }, rs -> {
+            int userId = rs.getInt("USER_ID");
+            loginIndex.put(userId, rs.getString("USER_LOGIN"), friendGraph.followers(userId).length);
         });
+    }
+
+    /**
+     * Получение всех пользователей с друзьями одним запросом
+     */
+    public List<User> findAll() {
+        List<User> userList = new ArrayList<>();
+        queryWithFriends(userList::add);
         log.debug("Текущее количество пользователей: {}", userList.size());
         return userList;
     }
 
+    /**
+     * Получение страницы пользователей с id больше after
+     */
+    public List<User> findPage(Integer after, Integer limit) {
+        String sqlQuery = "SELECT * FROM USERS WHERE USER_ID > ? ORDER BY USER_ID LIMIT ?";
+        List<User> userList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> mapRowToUser(rs), after, limit);
+        log.debug("Страница пользователей после id = {}: {}", after, userList.size());
+        return loadFriends(userList);
+    }
+
+    /**
+     * Последовательная выгрузка всех пользователей.
+     * Пользователи с друзьями читаются одним однонаправленным курсором и передаются
+     * потребителю по мере чтения, поэтому в памяти находится не больше одного пользователя
+     */
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        queryWithFriends(consumer);
+    }
+
     /**
      * Создание пользователя
      */
     public User create(User user) {
-        Integer maxCounter = jdbcTemplate.queryForObject("SELECT MAX(USER_ID) FROM USERS", Integer.class);
-        if (maxCounter != null) {
-            idCounter = maxCounter;
-        }
-        user.setId(++idCounter);
+        user.setId(idAllocator.next());
         if (user.getName() == null || user.getName().isBlank()) {
             user.setName(user.getLogin());
         }
@@ -74,6 +108,7 @@ public class UserDbStorage implements UserStorage {
                 user.getLogin(),
                 user.getName(),
                 user.getBirthday());
+        loginIndex.put(user.getId(), user.getLogin(), 0);
         log.debug("Пользователь к сохранению: {}", user);
         return user;
     }
@@ -89,7 +124,7 @@ public class UserDbStorage implements UserStorage {
                     String.format("Пользователя с id = %d не найдено", user.getId()));
         } else {
             String sqlQuery = "UPDATE USERS SET " +
-                    "USER_EMAIL = ?, USER_LOGIN = ?, USER_NAME = ?, BIRTHDAY = ? " +
+                    "USER_EMAIL = ?, USER_LOGIN = ?, USER_NAME = ?, BIRTHDAY = ?, ROW_VERSION = ROW_VERSION + 1 " +
                     "WHERE USER_ID = ?";
             jdbcTemplate.update(sqlQuery,
                     user.getEmail(),
@@ -97,6 +132,7 @@ public class UserDbStorage implements UserStorage {
                     user.getName(),
                     user.getBirthday().toString(),
                     user.getId());
+            loginIndex.put(user.getId(), user.getLogin(), friendGraph.followers(user.getId()).length);
             log.debug("Пользователь к обновлению: {}", user);
         }
         return user;
@@ -106,16 +142,8 @@ public class UserDbStorage implements UserStorage {
      * Получение пользователя по ID
      */
     public User findUserById(Integer id) {
-        String sqlQuery = "SELECT * FROM USERS WHERE USER_ID = " + id;
-        List<User> userList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> {
-            User user = new User();
-            user.setId(rs.getInt("USER_ID"));
-            user.setEmail(rs.getString("USER_EMAIL"));
-            user.setLogin(rs.getString("USER_LOGIN"));
-            user.setName(rs.getString("USER_NAME"));
-            user.setBirthday(rs.getDate("BIRTHDAY").toLocalDate());
-            return user;
-        });
+        String sqlQuery = "SELECT * FROM USERS WHERE USER_ID = ?";
+        List<User> userList = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> mapRowToUser(rs), id);
         if (userList.isEmpty()) {
             throw new UserNotFoundException(String.format("Пользователя с id = %d не найдено", id));
         } else {
@@ -123,6 +151,27 @@ public class UserDbStorage implements UserStorage {
         }
     }
 
+    /**
+     * Получение ревизии пользователя по id одним запросом к USERS, без загрузки друзей
+     */
+    @Override
+    public String findRevision(Integer id) {
+        String sqlQuery = "SELECT ROW_VERSION FROM USERS WHERE USER_ID = ?";
+        List<Long> versions = jdbcTemplate.queryForList(sqlQuery, Long.class, id);
+        if (versions.isEmpty()) {
+            throw new UserNotFoundException(String.format("Пользователя с id = %d не найдено", id));
+        }
+        return String.valueOf(versions.get(0));
+    }
+
+    /**
+     * Получение ревизии загруженного пользователя
+     */
+    @Override
+    public String getRevision(User user) {
+        return String.valueOf(user.getVersion());
+    }
+
     /**
      * Добавление в друзья
      */
@@ -137,6 +186,9 @@ public class UserDbStorage implements UserStorage {
                 "VALUES (?, ?, ?)";
         jdbcTemplate.update(sqlQuery, user.getId(),
                 friend.getId(), FriendStatus.НЕПОДТВЕРЖДЕННАЯ.toString());
+        bumpVersion(user.getId());
+        friendGraph.add(user.getId(), friend.getId());
+        loginIndex.setScore(friend.getId(), friendGraph.followers(friend.getId()).length);
         log.debug("Добавление в друзья пользователя с id {}", friend);
         friend.getFriends().put(user.getId(), FriendStatus.НЕПОДТВЕРЖДЕННАЯ);
         return user;
@@ -152,39 +204,166 @@ public class UserDbStorage implements UserStorage {
         if (rowsUpdated != 1) {
             throw new RuntimeException("Ошибка удаления из друзей");
         }
+        bumpVersion(user.getId(), friend.getId());
+        friendGraph.remove(user.getId(), friend.getId());
+        loginIndex.setScore(user.getId(), friendGraph.followers(user.getId()).length);
+        loginIndex.setScore(friend.getId(), friendGraph.followers(friend.getId()).length);
         log.debug("Удаление из друзей пользователя c id {}", friend);
         user.getFriends().remove(friend.getId());
         return user;
     }
 
     /**
-     * Получение всех друзей
+     * Получение всех друзей одним запросом в порядке id
      */
     public List<User> getFriends(User user) {
-        String sqlQuery = "SELECT FRIEND_ID FROM FRIENDS WHERE USER_ID = ?";
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet(sqlQuery, user.getId());
-        List<User> friends = new ArrayList<>();
-        while (userRows.next()) {
-            friends.add(findUserById(userRows.getInt("FRIEND_ID")));
-        }
+        String sqlQuery = "SELECT U.* FROM FRIENDS F " +
+                "INNER JOIN USERS U ON U.USER_ID = F.FRIEND_ID " +
+                "WHERE F.USER_ID = ? ORDER BY F.FRIEND_ID";
+        List<User> friends = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> mapRowToUser(rs), user.getId());
         log.debug("Получение списка друзей {}", friends);
         return friends;
     }
 
     /**
-     * Получение общих друзей
+     * Получение страницы друзей с id больше after
+     */
+    @Override
+    public List<User> getFriendsPage(User user, Integer after, Integer limit) {
+        String sqlQuery = "SELECT U.* FROM FRIENDS F " +
+                "INNER JOIN USERS U ON U.USER_ID = F.FRIEND_ID " +
+                "WHERE F.USER_ID = ? AND F.FRIEND_ID > ? ORDER BY F.FRIEND_ID LIMIT ?";
+        List<User> friends = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> mapRowToUser(rs),
+                user.getId(), after, limit);
+        log.debug("Страница друзей пользователя {} после id = {}: {}", user.getId(), after, friends.size());
+        return friends;
+    }
+
+    /**
+     * Получение общих друзей одним запросом в порядке id
      */
     public List<User> getCommonFriends(User user1, User user2) {
-        List<User> commonFriends = new ArrayList<>();
-        String sqlQuery = "SELECT F.FRIEND_ID, F.FRIEND_STATUS " +
-                "FROM FRIENDS F " +
+        String sqlQuery = "SELECT U.* FROM FRIENDS F " +
                 "INNER JOIN FRIENDS FW ON F.FRIEND_ID = FW.FRIEND_ID " +
-                "WHERE F.USER_ID = ? AND FW.USER_ID = ?";
-        SqlRowSet rowSet = jdbcTemplate.queryForRowSet(sqlQuery, user1.getId(), user2.getId());
-        while (rowSet.next()) {
-            commonFriends.add(findUserById(rowSet.getInt("FRIEND_ID")));
-        }
-        log.debug("Список общих друзей пользователей {} и ", user1, " {}", user2, commonFriends);
+                "INNER JOIN USERS U ON U.USER_ID = F.FRIEND_ID " +
+                "WHERE F.USER_ID = ? AND FW.USER_ID = ? ORDER BY F.FRIEND_ID";
+        List<User> commonFriends = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> mapRowToUser(rs),
+                user1.getId(), user2.getId());
+        log.debug("Список общих друзей пользователей {} и {}: {}", user1, user2, commonFriends);
         return commonFriends;
     }
-}
\ No newline at end of file
+
+    /**
+     * Чтение всех пользователей вместе с заявками в друзья.
+     * USERS обходится по первичному ключу, заявки присоединяются по индексу FRIENDS,
+     * поэтому строки одного пользователя идут подряд и сортировка не нужна.
+     * Пользователь передаётся потребителю, как только начинаются строки следующего
+     */
+    private void queryWithFriends(Consumer<User> consumer) {
+        User[] current = new User[1];
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(USERS_WITH_FRIENDS_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAM_CHUNK_SIZE);
+            return ps;
+        }, rs -> {
+            int userId = rs.getInt("USER_ID");
+            if (current[0] == null || current[0].getId() != userId) {
+                if (current[0] != null) {
+                    consumer.accept(current[0]);
+                }
+                current[0] = mapRowToUser(rs);
+            }
+            int friendId = rs.getInt("FRIEND_ID");
+            if (!rs.wasNull()) {
+                current[0].getFriends().put(friendId, FriendStatus.valueOf(rs.getString("FRIEND_STATUS")));
+            }
+        });
+        if (current[0] != null) {
+            consumer.accept(current[0]);
+        }
+    }
+
+    /**
+     * Получение рекомендаций друзей по числу общих друзей.
+     * Кандидаты выбираются по графу в памяти, пользователи загружаются одним запросом
+     */
+    @Override
+    public List<User> getSuggestions(User user, Integer limit) {
+        List<User> suggestions = findUsers(friendGraph.suggestions(user.getId(), limit));
+        log.debug("Рекомендации друзей пользователя {}: {}", user.getId(), suggestions.size());
+        return suggestions;
+    }
+
+    /**
+     * Автодополнение логинов: пользователи с логином, начинающимся с prefix,
+     * по убыванию числа входящих заявок в друзья
+     */
+    @Override
+    public List<User> autocomplete(String prefix, Integer limit) {
+        return findUsers(loginIndex.top(prefix, limit));
+    }
+
+    /**
+     * Получение пользователей без друзей по списку id одним запросом с сохранением порядка списка
+     */
+    private List<User> findUsers(int[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        Map<Integer, User> usersById = new HashMap<>();
+        jdbcTemplate.query("SELECT * FROM USERS WHERE USER_ID = ANY(?)", rs -> {
+            User loaded = mapRowToUser(rs);
+            usersById.put(loaded.getId(), loaded);
+        }, (Object) Arrays.stream(ids).boxed().toArray(Integer[]::new));
+        List<User> userList = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            User found = usersById.get(id);
+            if (found != null) {
+                userList.add(found);
+            }
+        }
+        return userList;
+    }
+
+    /**
+     * Увеличение версии пользователей после изменения списка друзей
+     */
+    private void bumpVersion(Integer... ids) {
+        jdbcTemplate.update("UPDATE USERS SET ROW_VERSION = ROW_VERSION + 1 WHERE USER_ID = ANY(?)", (Object) ids);
+    }
+
+    /**
+     * Загрузка друзей для списка пользователей одним запросом
+     */
+    private List<User> loadFriends(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        Map<Integer, User> usersById = new HashMap<>();
+        for (User user : users) {
+            user.setFriends(new HashMap<>());
+            usersById.put(user.getId(), user);
+        }
+        String sqlQuery = "SELECT USER_ID, FRIEND_ID, FRIEND_STATUS FROM FRIENDS WHERE USER_ID = ANY(?)";
+        jdbcTemplate.query(sqlQuery, rs -> {
+            usersById.get(rs.getInt("USER_ID")).getFriends().put(rs.getInt("FRIEND_ID"),
+                    FriendStatus.valueOf(rs.getString("FRIEND_STATUS")));
+        }, (Object) usersById.keySet().toArray(new Integer[0]));
+        return users;
+    }
+
+    /**
+     * Преобразование строки таблицы USERS в пользователя
+     */
+    private User mapRowToUser(ResultSet rs) throws SQLException {
+        User user = new User();
+        user.setId(rs.getInt("USER_ID"));
+        user.setEmail(rs.getString("USER_EMAIL"));
+        user.setLogin(rs.getString("USER_LOGIN"));
+        user.setName(rs.getString("USER_NAME"));
+        user.setBirthday(rs.getDate("BIRTHDAY").toLocalDate());
+        user.setVersion(rs.getLong("ROW_VERSION"));
+        return user;
+    }
+}
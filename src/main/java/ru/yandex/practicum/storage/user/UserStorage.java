@@ -4,6 +4,7 @@ import org.springframework.stereotype.Component;
 import ru.yandex.practicum.model.User;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс хранилища пользователей Filmorate
@@ -12,17 +13,31 @@ import java.util.List;
 public interface UserStorage {
     List<User> findAll();
 
+    List<User> findPage(Integer after, Integer limit);
+
+    void streamAll(Consumer<User> consumer);
+
     User create(User user);
 
     User update(User user);
 
     User findUserById(Integer id);
 
+    String findRevision(Integer id);
+
+    String getRevision(User user);
+
     User addFriend(User user, User friend);
 
     User deleteFriend(User user, User friend);
 
     List<User> getFriends(User user);
 
+    List<User> getFriendsPage(User user, Integer after, Integer limit);
+
     List<User> getCommonFriends(User user1, User user2);
+
+    List<User> getSuggestions(User user, Integer limit);
+
+    List<User> autocomplete(String prefix, Integer limit);
 }
\ No newline at end of file
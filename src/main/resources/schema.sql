@@ -5,9 +5,18 @@ create table if not exists PUBLIC.FILMS
     FILM_NAME    CHARACTER VARYING(50) not null,
     DESCRIPTION  CHARACTER VARYING(200),
     RELEASE_DATE DATE,
-    DURATION     INTEGER
+    DURATION     INTEGER,
+    LIKES_COUNT  INTEGER default 0 not null,
+    ROW_VERSION  BIGINT  default 0 not null
 );
 
+alter table PUBLIC.FILMS add column if not exists LIKES_COUNT INTEGER default 0 not null;
+
+alter table PUBLIC.FILMS add column if not exists ROW_VERSION BIGINT default 0 not null;
+
+create index if not exists FILMS_LIKES_COUNT_IDX
+    on PUBLIC.FILMS (LIKES_COUNT desc, FILM_ID);
+
 create table if not exists PUBLIC.GENRES
 (
     GENRE_ID   INTEGER           not null,
@@ -26,6 +35,12 @@ create table if not exists PUBLIC.FILM_GENRES
         foreign key (GENRE_ID) references PUBLIC.GENRES
 );
 
+-- Однократная очистка дубликатов FILM_GENRES, накопленных до появления первичного ключа FILM_GENRES_PK.
+-- После добавления ключа дубликатов нет и запрос ничего не удаляет
+delete from PUBLIC.FILM_GENRES G
+    where exists (select 1 from PUBLIC.FILM_GENRES D
+                  where D.FILM_ID = G.FILM_ID and D.GENRE_ID = G.GENRE_ID and D._ROWID_ < G._ROWID_);
+
 create table if not exists PUBLIC.MPA
 (
     MPA_ID   INTEGER not null,
@@ -51,10 +66,13 @@ create table if not exists PUBLIC.USERS
     USER_LOGIN CHARACTER VARYING(50) not null,
     USER_NAME  CHARACTER VARYING(50),
     BIRTHDAY   DATE,
+    ROW_VERSION BIGINT default 0 not null,
     constraint USERS_PK
         primary key (USER_ID)
 );
 
+alter table PUBLIC.USERS add column if not exists ROW_VERSION BIGINT default 0 not null;
+
 create table if not exists PUBLIC.FRIENDS
 (
     USER_ID       INTEGER not null,
@@ -73,4 +91,24 @@ create table if not exists PUBLIC.LIKES
         primary key (FILM_ID, USER_ID),
     constraint LIKES_USERS_USER_ID_FK
         foreign key (USER_ID) references PUBLIC.USERS
-);
\ No newline at end of file
+);
+
+create sequence if not exists PUBLIC.FILMS_ID_SEQ start with 1 increment by 1000;
+
+create sequence if not exists PUBLIC.USERS_ID_SEQ start with 1 increment by 1000;
+
+-- Вторичные индексы для запросов хранилищ. Скрипт выполняется при каждом запуске,
+-- поэтому все изменения идемпотентны
+alter table PUBLIC.FILM_GENRES add constraint if not exists FILM_GENRES_PK primary key (FILM_ID, GENRE_ID);
+
+create index if not exists FILM_GENRES_GENRE_ID_IDX
+    on PUBLIC.FILM_GENRES (GENRE_ID);
+
+create index if not exists FILM_MPA_MPA_ID_IDX
+    on PUBLIC.FILM_MPA (MPA_ID);
+
+create index if not exists LIKES_USER_ID_IDX
+    on PUBLIC.LIKES (USER_ID, FILM_ID);
+
+create index if not exists FRIENDS_FRIEND_ID_IDX
+    on PUBLIC.FRIENDS (FRIEND_ID, USER_ID);
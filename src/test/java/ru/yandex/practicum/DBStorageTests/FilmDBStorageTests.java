@@ -1,80 +1,51 @@
 package ru.yandex.practicum.DBStorageTests;
 
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
-import ru.yandex.practicum.exception.FilmNotFoundException;
-import ru.yandex.practicum.exception.ValidationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.model.BatchStatus;
 import ru.yandex.practicum.model.Film;
-import ru.yandex.practicum.model.Genre;
-import ru.yandex.practicum.model.MPA;
+import ru.yandex.practicum.model.FilmBatchResult;
 import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.storage.film.FilmCache;
+import ru.yandex.practicum.storage.film.FilmDbStorage;
 import ru.yandex.practicum.storage.film.FilmStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
-import static org.assertj.core.api.AssertionsForClassTypes.catchThrowable;
-import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
-public class FilmDBStorageTests {
-    private final FilmStorage storage;
+public class FilmDBStorageTests extends FilmStorageTests {
     private final JdbcTemplate jdbcTemplate;
-
-    public FilmDBStorageTests(@Qualifier("filmDbStorage") FilmStorage storage,
-                              @Autowired JdbcTemplate jdbcTemplate) {
-        this.storage = storage;
+    private final FilmCache filmCache;
+    private final TransactionTemplate transactionTemplate;
+
+    public FilmDBStorageTests(@Autowired FilmStorage storage,
+                              @Autowired JdbcTemplate jdbcTemplate,
+                              @Autowired FilmCache filmCache,
+                              @Autowired PlatformTransactionManager transactionManager) {
+        super(storage);
         this.jdbcTemplate = jdbcTemplate;
+        this.filmCache = filmCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
-    @BeforeEach
-    public void createTestFilm() {
-        storage.add(giveTerminator());
-    }
-
-    public Film giveTerminator() {
-        Film film = new Film();
-        film.setName("Terminator");
-        film.setDescription("Full termination");
-        film.setReleaseDate(LocalDate.of(2023,05,05));
-        film.setDuration(90);
-        film.setMpa(new MPA(5, "NC-17"));
-        film.getGenres().add(new Genre(1, "Комедия"));
-        return film;
-    }
-
-    public Film giveAvatar() {
-        Film film = new Film();
-        film.setName("Avatar");
-        film.setDescription("Avatars planet fantasy");
-        film.setReleaseDate(LocalDate.of(2022,12,12));
-        film.setDuration(150);
-        film.setMpa(new MPA(2, "PG"));
-        return film;
-    }
-
-    public Film giveTitanic() {
-        Film film = new Film();
-        film.setName("Titanic");
-        film.setDescription("Titanic is sinking");
-        film.setReleaseDate(LocalDate.of(2000,02,02));
-        film.setDuration(180);
-        film.setMpa(new MPA(2, "PG"));
-        return film;
-    }
-
-    public void createUserWithId(int id) {
+    @Override
+    protected void createUserWithId(int id) {
         User user = new User();
         user.setId(id);
         user.setEmail("1@1.com");
@@ -97,155 +68,126 @@ public class FilmDBStorageTests {
     }
 
     @Test
-    public void addFilmTest() {
-        Film film = giveTerminator();
-        storage.add(film);
-        film = storage.findFilmById(1);
-
-        assertThat(film)
-                .isNotNull()
-                .hasFieldOrPropertyWithValue("id", 1)
-                .hasFieldOrPropertyWithValue("name", "Terminator")
-                .hasFieldOrPropertyWithValue("duration", 90L);
-        assertEquals(5, film.getMpa().getId());
+    public void reconcileLikesCountTest() {
+        createUserWithId(1);
+        createUserWithId(2);
+        storage.add(giveAvatar());
+        storage.putLike(storage.findFilmById(1), 1);
+        jdbcTemplate.update("INSERT INTO LIKES (FILM_ID, USER_ID) VALUES (2, 1), (2, 2)");
+
+        assertEquals(1, ((FilmDbStorage) storage).reconcileLikesCount());
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT LIKES_COUNT FROM FILMS WHERE FILM_ID = 2", Integer.class));
     }
 
     @Test
-    public void addFilmEReleaseDateErrorTest() {
-        Film film = giveTerminator();
-        film.setReleaseDate(LocalDate.of(1777, 7, 7));
-        Throwable thrown = catchThrowable(() -> {
-            storage.add(film);
-        });
+    public void verifyPopularityIndexTest() {
+        createUserWithId(1);
+        createUserWithId(2);
+        storage.add(giveAvatar());
+        storage.putLike(storage.findFilmById(1), 1);
+        jdbcTemplate.update("INSERT INTO LIKES (FILM_ID, USER_ID) VALUES (2, 1), (2, 2)");
 
-        assertThat(thrown).isInstanceOf(ValidationException.class)
-                .hasMessage("Ошибка валидации даты релиза");
+        assertEquals(1, storage.findBest(1).get(0).getId());
+        assertEquals(1, ((FilmDbStorage) storage).verifyPopularityIndex());
+        assertEquals(2, storage.findBest(1).get(0).getId());
+        assertEquals(0, ((FilmDbStorage) storage).verifyPopularityIndex());
     }
 
     @Test
-    public void updateFilmTest() {
-        Film film = giveTerminator();
-        film.setId(1);
-        film.setName("Galileo");
-        film.setDuration(120L);
-        storage.update(film);
-        assertThat(storage.findFilmById(1))
-                .isNotNull()
-                .hasFieldOrPropertyWithValue("id", 1)
-                .hasFieldOrPropertyWithValue("name", "Galileo")
-                .hasFieldOrPropertyWithValue("duration", 120L);
-    }
+    public void verifyPopularityIndexSkipsLikeInProgressTest() {
+        createUserWithId(1);
+        createUserWithId(2);
+        jdbcTemplate.update("INSERT INTO LIKES (FILM_ID, USER_ID) VALUES (1, 1)");
 
-    @Test
-    public void updateFilmError() {
-        Film film = new Film();
-        film.setId(-2);
-        film.setReleaseDate(LocalDate.of(1990, 9, 9));
-        Throwable thrown = catchThrowable(() -> {
-            storage.update(film);
+        transactionTemplate.executeWithoutResult(status -> {
+            storage.putLike(storage.findFilmById(1), 2);
+            assertEquals(0, CompletableFuture.supplyAsync(((FilmDbStorage) storage)::verifyPopularityIndex).join());
         });
 
-        assertThat(thrown).isInstanceOf(FilmNotFoundException.class);
-        assertThat(thrown.getMessage()).isEqualTo(String.format("Фильма с таким id не найдено"));
+        assertEquals(1, ((FilmDbStorage) storage).verifyPopularityIndex());
+        assertEquals(0, ((FilmDbStorage) storage).verifyPopularityIndex());
     }
 
     @Test
-    public void getAllFilmsTest() {
-        storage.add(giveAvatar());
-        List<Film> users = storage.findAll();
+    public void addAllFailedRowInChunkTest() {
+        Film longName = giveTitanic();
+        longName.setName("T".repeat(60));
+        List<FilmBatchResult> results = storage.addAll(List.of(giveAvatar(), longName, giveTitanic()));
 
-        assertEquals(users.size(), 2);
-        assertThat(users.containsAll(List.of(giveTerminator(), giveAvatar())));
+        assertEquals(BatchStatus.CREATED, results.get(0).getStatus());
+        assertEquals(BatchStatus.FAILED, results.get(1).getStatus());
+        assertEquals("Ошибка записи фильма", results.get(1).getError());
+        assertEquals(BatchStatus.CREATED, results.get(2).getStatus());
+        assertEquals(3, storage.findAll().size());
+        assertEquals("Titanic", storage.findFilmById(results.get(2).getId()).getName());
     }
 
     @Test
-    public void testFindFilmById() {
-        Optional<Film> userOptional = Optional.ofNullable(storage.findFilmById(1));
-
-        assertThat(userOptional)
-                .isPresent()
-                .hasValueSatisfying(film ->
-                        assertThat(film).hasFieldOrPropertyWithValue("id", 1)
-                                .hasFieldOrPropertyWithValue("name", "Terminator")
-                                .hasFieldOrPropertyWithValue("duration", 90L)
-                );
+    public void popularityIndexSeededFromLikesCountTest() {
+        storage.add(giveAvatar());
+        jdbcTemplate.update("UPDATE FILMS SET LIKES_COUNT = 5 WHERE FILM_ID = 2");
+
+        ((FilmDbStorage) storage).initIndexes();
+
+        assertEquals(2, storage.findBest(1).get(0).getId());
     }
 
     @Test
-    public void testFindFilmByWrongId() {
-        Throwable thrown = catchThrowable(() -> {
-            storage.findFilmById(2);
-        });
+    public void streamAllInReadOnlyTransactionTest() {
+        storage.add(giveAvatar());
+        List<Boolean> readOnly = new ArrayList<>();
+        storage.streamAll(film -> readOnly.add(TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && TransactionSynchronizationManager.isActualTransactionActive()));
 
-        assertThat(thrown).isInstanceOf(FilmNotFoundException.class);
-        assertThat(thrown.getMessage()).isEqualTo(String.format("Фильм с id = %d не найден", 2));
+        assertEquals(List.of(true, true), readOnly);
     }
 
     @Test
-    public void putLikeTest() {
+    public void rebuildSimilarityIndexTest() {
         createUserWithId(1);
+        createUserWithId(2);
+        storage.add(giveAvatar());
+        storage.add(giveTitanic());
         storage.putLike(storage.findFilmById(1), 1);
-        Set<Integer> likes = storage.findFilmById(1).getLikes();
-
-        assertNotNull(likes);
-        assertTrue(likes.contains(1));
-    }
+        storage.putLike(storage.findFilmById(3), 1);
+        storage.putLike(storage.findFilmById(1), 2);
+        storage.putLike(storage.findFilmById(2), 2);
+        storage.putLike(storage.findFilmById(3), 2);
 
-    @Test
-    public void putLikeErrorTest() {
-        Film film = new Film();
-        film.setId(-2);
-        film.setReleaseDate(LocalDate.of(1990, 9, 9));
-        Throwable thrown = catchThrowable(() -> {
-            storage.putLike(film, 1);
-        });
+        ((FilmDbStorage) storage).rebuildSimilarityIndex();
+        List<Film> similar = storage.findSimilar(storage.findFilmById(1), 10);
 
-        assertThat(thrown).isInstanceOf(RuntimeException.class);
-        assertThat(thrown.getMessage()).isEqualTo(String.format("Ошибка добавления лайка"));
+        assertEquals(2, similar.size());
+        assertEquals(3, similar.get(0).getId());
+        assertEquals(2, similar.get(1).getId());
     }
 
     @Test
-    public void deleteLikeTest() {
-        createUserWithId(1);
+    public void findFilmByIdCachedTest() {
+        storage.findFilmById(1);
+        storage.findFilmById(1).getLikes().add(42);
         Film film = storage.findFilmById(1);
-        storage.putLike(film, 1);
 
-        assertTrue(film.getLikes().size() == 1);
+        assertTrue(film.getLikes().isEmpty());
+        assertEquals(2, filmCache.getStats().getHits());
+        assertEquals(1, filmCache.getStats().getMisses());
 
-        storage.deleteLike(1, 1);
+        Film galileo = giveTerminator();
+        galileo.setId(1);
+        galileo.setName("Galileo");
+        storage.update(galileo);
 
-        assertTrue(storage.findFilmById(1).getLikes().size() == 0);
+        assertEquals("Galileo", storage.findFilmById(1).getName());
     }
 
     @Test
-    public void deleteLikeErrorTest() {
-        Throwable thrown = catchThrowable(() -> {
-            storage.deleteLike(1, 1);
-        });
-
-        assertThat(thrown).isInstanceOf(RuntimeException.class);
-        assertThat(thrown.getMessage()).isEqualTo(String.format("Ошибка удаления лайка"));
-    }
-
-    @Test
-    public void getPopularTest() {
-        createUserWithId(1);
-        createUserWithId(2);
-        createUserWithId(3);
-        createUserWithId(4);
-        storage.add(giveAvatar());
-        storage.add(giveTitanic());
-        storage.putLike(storage.findFilmById(2), 4);
-        storage.putLike(storage.findFilmById(2), 1);
-        storage.putLike(storage.findFilmById(2), 3);
-        storage.putLike(storage.findFilmById(3), 2);
-        storage.putLike(storage.findFilmById(3), 1);
-        storage.putLike(storage.findFilmById(1), 3);
-
-        List<Film> popular = storage.findBest(2);
+    public void staleLoadNotCachedAfterInvalidateTest() {
+        long stamp = filmCache.stamp();
+        Film stale = storage.findFilmById(1);
+        filmCache.invalidate(1);
+        filmCache.put(stale, stamp);
 
-        assertTrue(popular.size() == 2);
-        assertEquals(2, popular.get(0).getId());
-        assertEquals(3, popular.get(1).getId());
+        assertNull(filmCache.get(1));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,508 @@
+package ru.yandex.practicum.DBStorageTests;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.exception.FilmNotFoundException;
+import ru.yandex.practicum.exception.ValidationException;
+import ru.yandex.practicum.model.BatchStatus;
+import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.FilmBatchResult;
+import ru.yandex.practicum.model.FilmFilter;
+import ru.yandex.practicum.model.Genre;
+import ru.yandex.practicum.model.MPA;
+import ru.yandex.practicum.storage.film.FilmStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.catchThrowable;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Общие тесты хранилищ фильмов. Выполняются для каждой реализации FilmStorage
+ */
+public abstract class FilmStorageTests {
+    protected final FilmStorage storage;
+
+    protected FilmStorageTests(FilmStorage storage) {
+        this.storage = storage;
+    }
+
+    @BeforeEach
+    public void createTestFilm() {
+        storage.add(giveTerminator());
+    }
+
+    public Film giveTerminator() {
+        Film film = new Film();
+        film.setName("Terminator");
+        film.setDescription("Full termination");
+        film.setReleaseDate(LocalDate.of(2023,05,05));
+        film.setDuration(90);
+        film.setMpa(new MPA(5, "NC-17"));
+        film.getGenres().add(new Genre(1, "Комедия"));
+        return film;
+    }
+
+    public Film giveAvatar() {
+        Film film = new Film();
+        film.setName("Avatar");
+        film.setDescription("Avatars planet fantasy");
+        film.setReleaseDate(LocalDate.of(2022,12,12));
+        film.setDuration(150);
+        film.setMpa(new MPA(2, "PG"));
+        return film;
+    }
+
+    public Film giveTitanic() {
+        Film film = new Film();
+        film.setName("Titanic");
+        film.setDescription("Titanic is sinking");
+        film.setReleaseDate(LocalDate.of(2000,02,02));
+        film.setDuration(180);
+        film.setMpa(new MPA(2, "PG"));
+        return film;
+    }
+
+    /**
+     * Создание пользователя с заданным id для установки лайков
+     */
+    protected abstract void createUserWithId(int id);
+
+    @Test
+    public void addFilmTest() {
+        Film film = giveTerminator();
+        storage.add(film);
+        film = storage.findFilmById(1);
+
+        assertThat(film)
+                .isNotNull()
+                .hasFieldOrPropertyWithValue("id", 1)
+                .hasFieldOrPropertyWithValue("name", "Terminator")
+                .hasFieldOrPropertyWithValue("duration", 90L);
+        assertEquals(5, film.getMpa().getId());
+    }
+
+    @Test
+    public void addFilmEReleaseDateErrorTest() {
+        Film film = giveTerminator();
+        film.setReleaseDate(LocalDate.of(1777, 7, 7));
+        Throwable thrown = catchThrowable(() -> {
+            storage.add(film);
+        });
+
+        assertThat(thrown).isInstanceOf(ValidationException.class)
+                .hasMessage("Ошибка валидации даты релиза");
+    }
+
+    @Test
+    public void updateFilmTest() {
+        Film film = giveTerminator();
+        film.setId(1);
+        film.setName("Galileo");
+        film.setDuration(120L);
+        storage.update(film);
+        assertThat(storage.findFilmById(1))
+                .isNotNull()
+                .hasFieldOrPropertyWithValue("id", 1)
+                .hasFieldOrPropertyWithValue("name", "Galileo")
+                .hasFieldOrPropertyWithValue("duration", 120L);
+    }
+
+    @Test
+    public void updateFilmError() {
+        Film film = new Film();
+        film.setId(-2);
+        film.setReleaseDate(LocalDate.of(1990, 9, 9));
+        Throwable thrown = catchThrowable(() -> {
+            storage.update(film);
+        });
+
+        assertThat(thrown).isInstanceOf(FilmNotFoundException.class);
+        assertThat(thrown.getMessage()).isEqualTo(String.format("Фильма с таким id не найдено"));
+    }
+
+    @Test
+    public void getAllFilmsTest() {
+        storage.add(giveAvatar());
+        List<Film> users = storage.findAll();
+
+        assertEquals(users.size(), 2);
+        assertThat(users.containsAll(List.of(giveTerminator(), giveAvatar())));
+    }
+
+    @Test
+    public void getAllFilmsLoadsLikesGenresAndMpaTest() {
+        createUserWithId(1);
+        storage.add(giveAvatar());
+        storage.putLike(storage.findFilmById(1), 1);
+        List<Film> films = storage.findAll();
+
+        assertEquals(2, films.size());
+        Film terminator = films.get(0).getId() == 1 ? films.get(0) : films.get(1);
+        Film avatar = films.get(0).getId() == 2 ? films.get(0) : films.get(1);
+        assertEquals(Set.of(1), terminator.getLikes());
+        assertEquals(1, terminator.getGenres().size());
+        assertEquals(5, terminator.getMpa().getId());
+        assertTrue(avatar.getLikes().isEmpty());
+        assertTrue(avatar.getGenres().isEmpty());
+        assertEquals("PG", avatar.getMpa().getName());
+    }
+
+    @Test
+    public void testFindFilmById() {
+        Optional<Film> userOptional = Optional.ofNullable(storage.findFilmById(1));
+
+        assertThat(userOptional)
+                .isPresent()
+                .hasValueSatisfying(film ->
+                        assertThat(film).hasFieldOrPropertyWithValue("id", 1)
+                                .hasFieldOrPropertyWithValue("name", "Terminator")
+                                .hasFieldOrPropertyWithValue("duration", 90L)
+                );
+    }
+
+    @Test
+    public void testFindFilmByWrongId() {
+        Throwable thrown = catchThrowable(() -> {
+            storage.findFilmById(2);
+        });
+
+        assertThat(thrown).isInstanceOf(FilmNotFoundException.class);
+        assertThat(thrown.getMessage()).isEqualTo(String.format("Фильм с id = %d не найден", 2));
+    }
+
+    @Test
+    public void putLikeTest() {
+        createUserWithId(1);
+        storage.putLike(storage.findFilmById(1), 1);
+        Set<Integer> likes = storage.findFilmById(1).getLikes();
+
+        assertNotNull(likes);
+        assertTrue(likes.contains(1));
+    }
+
+    @Test
+    public void putLikeErrorTest() {
+        Film film = new Film();
+        film.setId(-2);
+        film.setReleaseDate(LocalDate.of(1990, 9, 9));
+        Throwable thrown = catchThrowable(() -> {
+            storage.putLike(film, 1);
+        });
+
+        assertThat(thrown).isInstanceOf(RuntimeException.class);
+        assertThat(thrown.getMessage()).isEqualTo(String.format("Ошибка добавления лайка"));
+    }
+
+    @Test
+    public void deleteLikeTest() {
+        createUserWithId(1);
+        Film film = storage.findFilmById(1);
+        storage.putLike(film, 1);
+
+        assertTrue(film.getLikes().size() == 1);
+
+        storage.deleteLike(1, 1);
+
+        assertTrue(storage.findFilmById(1).getLikes().size() == 0);
+    }
+
+    @Test
+    public void deleteLikeErrorTest() {
+        Throwable thrown = catchThrowable(() -> {
+            storage.deleteLike(1, 1);
+        });
+
+        assertThat(thrown).isInstanceOf(RuntimeException.class);
+        assertThat(thrown.getMessage()).isEqualTo(String.format("Ошибка удаления лайка"));
+    }
+
+    @Test
+    public void getPopularTest() {
+        createUserWithId(1);
+        createUserWithId(2);
+        createUserWithId(3);
+        createUserWithId(4);
+        storage.add(giveAvatar());
+        storage.add(giveTitanic());
+        storage.putLike(storage.findFilmById(2), 4);
+        storage.putLike(storage.findFilmById(2), 1);
+        storage.putLike(storage.findFilmById(2), 3);
+        storage.putLike(storage.findFilmById(3), 2);
+        storage.putLike(storage.findFilmById(3), 1);
+        storage.putLike(storage.findFilmById(1), 3);
+
+        List<Film> popular = storage.findBest(2);
+
+        assertTrue(popular.size() == 2);
+        assertEquals(2, popular.get(0).getId());
+        assertEquals(3, popular.get(1).getId());
+    }
+
+    @Test
+    public void findRecommendationsTest() {
+        createUserWithId(1);
+        createUserWithId(2);
+        createUserWithId(3);
+        createUserWithId(4);
+        storage.add(giveAvatar());
+        storage.add(giveTitanic());
+        storage.add(giveAvatar());
+        storage.putLike(storage.findFilmById(1), 1);
+        storage.putLike(storage.findFilmById(2), 1);
+        storage.putLike(storage.findFilmById(1), 2);
+        storage.putLike(storage.findFilmById(2), 2);
+        storage.putLike(storage.findFilmById(3), 2);
+        storage.putLike(storage.findFilmById(1), 3);
+        storage.putLike(storage.findFilmById(4), 3);
+
+        List<Film> recommended = storage.findRecommendations(1, 10);
+
+        assertEquals(2, recommended.size());
+        assertEquals(3, recommended.get(0).getId());
+        assertEquals(4, recommended.get(1).getId());
+        assertEquals(1, storage.findRecommendations(1, 1).size());
+        assertTrue(storage.findRecommendations(4, 10).isEmpty());
+
+        storage.putLike(storage.findFilmById(3), 1);
+        recommended = storage.findRecommendations(1, 10);
+
+        assertEquals(1, recommended.size());
+        assertEquals(4, recommended.get(0).getId());
+    }
+
+    @Test
+    public void findSimilarTest() {
+        createUserWithId(1);
+        createUserWithId(2);
+        createUserWithId(3);
+        storage.add(giveAvatar());
+        storage.add(giveTitanic());
+        storage.add(giveAvatar());
+        storage.putLike(storage.findFilmById(1), 1);
+        storage.putLike(storage.findFilmById(2), 1);
+        storage.putLike(storage.findFilmById(3), 1);
+        storage.putLike(storage.findFilmById(1), 2);
+        storage.putLike(storage.findFilmById(2), 2);
+        storage.putLike(storage.findFilmById(1), 3);
+        storage.putLike(storage.findFilmById(4), 3);
+
+        List<Film> similar = storage.findSimilar(storage.findFilmById(1), 10);
+
+        assertEquals(3, similar.size());
+        assertEquals(2, similar.get(0).getId());
+        assertEquals(3, similar.get(1).getId());
+        assertEquals(4, similar.get(2).getId());
+        assertEquals(2, storage.findSimilar(storage.findFilmById(1), 2).size());
+
+        storage.deleteLike(2, 1);
+        similar = storage.findSimilar(storage.findFilmById(2), 10);
+
+        assertEquals(1, similar.size());
+        assertEquals(1, similar.get(0).getId());
+    }
+
+    @Test
+    public void searchTest() {
+        storage.add(giveAvatar());
+        storage.add(giveTitanic());
+        Film yolki = giveAvatar();
+        yolki.setName("Ёлки");
+        yolki.setDescription("Новогодняя КОМЕДИЯ");
+        storage.add(yolki);
+
+        List<Film> found = storage.search("titanic planet", 10);
+
+        assertEquals(2, found.size());
+        assertEquals(3, found.get(0).getId());
+        assertEquals(2, found.get(1).getId());
+        assertEquals(4, storage.search("елки", 10).get(0).getId());
+        assertEquals(4, storage.search("Комедия!", 10).get(0).getId());
+        assertTrue(storage.search("matrix", 10).isEmpty());
+
+        yolki.setName("Иван Васильевич");
+        storage.update(yolki);
+
+        assertTrue(storage.search("ёлки", 10).isEmpty());
+        assertEquals(4, storage.search("васильевич", 1).get(0).getId());
+    }
+
+    @Test
+    public void autocompleteTest() {
+        createUserWithId(1);
+        createUserWithId(2);
+        storage.add(giveAvatar());
+        storage.add(giveTitanic());
+        Film don = giveAvatar();
+        don.setName("Тихий Дон");
+        storage.add(don);
+        storage.putLike(storage.findFilmById(3), 1);
+        storage.putLike(storage.findFilmById(3), 2);
+        storage.putLike(storage.findFilmById(1), 1);
+
+        List<Film> found = storage.autocomplete("t", 10);
+
+        assertEquals(2, found.size());
+        assertEquals(3, found.get(0).getId());
+        assertEquals(1, found.get(1).getId());
+        assertEquals(1, storage.autocomplete("TE", 10).get(0).getId());
+        assertEquals(4, storage.autocomplete("тих", 10).get(0).getId());
+        assertTrue(storage.autocomplete("x", 10).isEmpty());
+
+        storage.deleteLike(3, 1);
+        storage.deleteLike(3, 2);
+
+        assertEquals(1, storage.autocomplete("t", 10).get(0).getId());
+
+        Film avatar = giveAvatar();
+        avatar.setId(1);
+        avatar.setName("Avatar 2");
+        storage.update(avatar);
+        found = storage.autocomplete("ava", 10);
+
+        assertEquals(1, storage.autocomplete("t", 10).size());
+        assertEquals(2, found.size());
+        assertEquals(1, found.get(0).getId());
+        assertEquals(2, found.get(1).getId());
+    }
+
+    @Test
+    public void findByFilterTest() {
+        storage.add(giveAvatar());
+        Film titanic = giveTitanic();
+        titanic.getGenres().add(new Genre(2, "Драма"));
+        storage.add(titanic);
+
+        FilmFilter byMpa = new FilmFilter();
+        byMpa.setMpa(Set.of(2));
+        List<Film> found = storage.findByFilter(byMpa, 0, 10);
+
+        assertEquals(2, found.size());
+        assertEquals(2, found.get(0).getId());
+        assertEquals(3, found.get(1).getId());
+
+        byMpa.setYearFrom(1990);
+        byMpa.setYearTo(2000);
+        found = storage.findByFilter(byMpa, 0, 10);
+
+        assertEquals(1, found.size());
+        assertEquals(3, found.get(0).getId());
+
+        FilmFilter byDuration = new FilmFilter();
+        byDuration.setMaxDuration(155L);
+
+        assertEquals(2, storage.findByFilter(byDuration, 0, 10).size());
+        byDuration.setMinDuration(95L);
+        assertEquals(2, storage.findByFilter(byDuration, 0, 10).get(0).getId());
+
+        FilmFilter byGenre = new FilmFilter();
+        byGenre.setGenre(Set.of(1, 2));
+        found = storage.findByFilter(byGenre, 0, 10);
+
+        assertEquals(2, found.size());
+        assertEquals(1, found.get(0).getId());
+        assertEquals(3, found.get(1).getId());
+        assertEquals(1, storage.findByFilter(byGenre, 0, 1).get(0).getId());
+        assertEquals(3, storage.findByFilter(byGenre, 1, 10).get(0).getId());
+
+        titanic.setGenres(new TreeSet<>());
+        titanic.setMpa(new MPA(5, "NC-17"));
+        storage.update(titanic);
+        byMpa = new FilmFilter();
+        byMpa.setMpa(Set.of(5));
+
+        assertEquals(1, storage.findByFilter(byGenre, 0, 10).size());
+        assertEquals(2, storage.findByFilter(byMpa, 0, 10).size());
+        assertTrue(storage.findByFilter(byGenre, 3, 10).isEmpty());
+    }
+
+    @Test
+    public void findPageTest() {
+        storage.add(giveAvatar());
+        storage.add(giveTitanic());
+        List<Film> firstPage = storage.findPage(0, 2);
+        List<Film> secondPage = storage.findPage(firstPage.get(1).getId(), 2);
+
+        assertEquals(2, firstPage.size());
+        assertEquals(1, firstPage.get(0).getId());
+        assertEquals(2, firstPage.get(1).getId());
+        assertEquals(1, secondPage.size());
+        assertEquals(3, secondPage.get(0).getId());
+        assertEquals(2, secondPage.get(0).getMpa().getId());
+    }
+
+    @Test
+    public void streamAllTest() {
+        storage.add(giveAvatar());
+        List<Film> streamed = new ArrayList<>();
+        storage.streamAll(streamed::add);
+
+        assertEquals(2, streamed.size());
+        assertEquals(1, streamed.get(0).getId());
+        assertEquals(1, streamed.get(0).getGenres().size());
+        assertEquals(2, streamed.get(1).getMpa().getId());
+    }
+
+    @Test
+    public void addAllTest() {
+        Film oldFilm = giveTitanic();
+        oldFilm.setReleaseDate(LocalDate.of(1777, 7, 7));
+        List<FilmBatchResult> results = storage.addAll(List.of(giveAvatar(), oldFilm, giveTerminator()));
+
+        assertEquals(3, results.size());
+        assertEquals(BatchStatus.CREATED, results.get(0).getStatus());
+        assertEquals(BatchStatus.FAILED, results.get(1).getStatus());
+        assertEquals("Ошибка валидации даты релиза", results.get(1).getError());
+        assertEquals(BatchStatus.CREATED, results.get(2).getStatus());
+        assertEquals(3, storage.findAll().size());
+        Film terminator = storage.findFilmById(results.get(2).getId());
+        assertEquals(5, terminator.getMpa().getId());
+        assertEquals(1, terminator.getGenres().size());
+    }
+
+    @Test
+    public void addAllUnknownDictionaryIdTest() {
+        Film unknownMpa = giveTitanic();
+        unknownMpa.setMpa(new MPA(99, null));
+        Film unknownGenre = giveAvatar();
+        unknownGenre.getGenres().add(new Genre(99, null));
+        List<FilmBatchResult> results = storage.addAll(List.of(giveAvatar(), unknownMpa, unknownGenre,
+                giveTerminator()));
+
+        assertEquals(BatchStatus.CREATED, results.get(0).getStatus());
+        assertEquals(BatchStatus.FAILED, results.get(1).getStatus());
+        assertEquals("Рейтинг с id = 99 не найден", results.get(1).getError());
+        assertEquals(BatchStatus.FAILED, results.get(2).getStatus());
+        assertEquals("Жанр с id = 99 не найден", results.get(2).getError());
+        assertEquals(BatchStatus.CREATED, results.get(3).getStatus());
+        assertEquals(3, storage.findAll().size());
+    }
+
+    @Test
+    public void revisionTest() {
+        createUserWithId(1);
+        String created = storage.findRevision(1);
+
+        assertEquals(created, storage.getRevision(storage.findFilmById(1)));
+
+        storage.putLike(storage.findFilmById(1), 1);
+        String liked = storage.findRevision(1);
+
+        assertNotEquals(created, liked);
+        assertEquals(liked, storage.getRevision(storage.findFilmById(1)));
+
+        Film galileo = giveTerminator();
+        galileo.setId(1);
+        galileo.setName("Galileo");
+        storage.update(galileo);
+
+        assertNotEquals(liked, storage.findRevision(1));
+        assertThrows(FilmNotFoundException.class, () -> storage.findRevision(999));
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.model.Genre;
+import ru.yandex.practicum.service.DictionaryService;
 import ru.yandex.practicum.storage.genre.GenreStorage;
 
 import java.util.List;
@@ -23,6 +24,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 public class GenreDBStorageTests {
     @Autowired
     private final GenreStorage storage;
+    @Autowired
+    private final DictionaryService dictionary;
 
     @Test
     public void getAllMpaTest() {
@@ -41,6 +44,17 @@ public class GenreDBStorageTests {
         assertEquals("Боевик", genre.getName());
     }
 
+    @Test
+    public void dictionaryReturnsCopiesTest() {
+        dictionary.getGenre(6).setName("Изменён");
+        dictionary.getGenres().get(5).setName("Изменён");
+        dictionary.getMpa(1).setName("Изменён");
+
+        assertEquals("Боевик", dictionary.getGenre(6).getName());
+        assertEquals("Боевик", dictionary.getGenres().get(5).getName());
+        assertEquals("G", dictionary.getMpa(1).getName());
+    }
+
     @Test
     public void getMpaByInvalidIdTest() {
         Throwable thrown = catchThrowable(() -> {
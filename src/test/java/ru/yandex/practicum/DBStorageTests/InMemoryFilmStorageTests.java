@@ -0,0 +1,72 @@
+package ru.yandex.practicum.DBStorageTests;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.storage.film.FilmStorage;
+import ru.yandex.practicum.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@SpringBootTest(properties = "filmorate.storage=memory")
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class InMemoryFilmStorageTests extends FilmStorageTests {
+    private final UserStorage userStorage;
+
+    public InMemoryFilmStorageTests(@Autowired FilmStorage storage, @Autowired UserStorage userStorage) {
+        super(storage);
+        this.userStorage = userStorage;
+    }
+
+    @Override
+    protected void createUserWithId(int id) {
+        User user = new User();
+        user.setEmail("1@1.com");
+        user.setLogin("lgn");
+        user.setName("nm");
+        user.setBirthday(LocalDate.of(1978, 10, 10));
+
+        assertEquals(id, userStorage.create(user).getId());
+    }
+
+    @Test
+    public void memoryStorageSelectedTest() {
+        assertInstanceOf(InMemoryFilmStorage.class, storage);
+    }
+
+    @Test
+    public void concurrentLikesTest() throws Exception {
+        for (int i = 1; i <= 100; i++) {
+            createUserWithId(i);
+        }
+        storage.add(giveAvatar());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Film>> futures = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            int userId = i;
+            futures.add(executor.submit(() -> storage.putLike(storage.findFilmById(1 + userId % 2), userId)));
+        }
+        for (Future<Film> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(50, storage.findFilmById(1).getLikes().size());
+        assertEquals(50, storage.findFilmById(2).getLikes().size());
+        assertEquals(100, storage.findFilmById(1).getVersion() + storage.findFilmById(2).getVersion());
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.DBStorageTests;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.storage.user.UserStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "filmorate.storage=memory")
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class InMemoryUserStorageTests extends UserStorageTests {
+
+    public InMemoryUserStorageTests(@Autowired UserStorage storage) {
+        super(storage);
+    }
+
+    @Test
+    public void getCommonFriendsHighDegreeTest() {
+        User popular = storage.findUserById(1);
+        User casual = storage.create(giveTerminator());
+        for (int i = 0; i < 200; i++) {
+            User friend = storage.create(giveJohnny());
+            storage.addFriend(popular, friend);
+            if (i == 10 || i == 150) {
+                storage.addFriend(casual, friend);
+            }
+        }
+        storage.addFriend(casual, popular);
+        List<User> common = storage.getCommonFriends(casual, popular);
+
+        assertEquals(2, common.size());
+        assertEquals(13, common.get(0).getId());
+        assertEquals(153, common.get(1).getId());
+        assertEquals(common, storage.getCommonFriends(popular, casual));
+    }
+
+    @Test
+    public void concurrentAddAndDeleteFriendTest() throws Exception {
+        User popular = storage.findUserById(1);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            users.add(storage.create(giveJohnny()));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (User user : users) {
+            futures.add(executor.submit(() -> {
+                storage.addFriend(user, popular);
+                storage.addFriend(popular, user);
+                if (user.getId() % 2 == 0) {
+                    storage.deleteFriend(user, popular);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(50, storage.getFriends(popular).size());
+        assertTrue(storage.getFriends(popular).stream().allMatch(friend -> friend.getId() % 2 == 1));
+        assertTrue(storage.getFriends(storage.findUserById(2)).isEmpty());
+        assertEquals(1, storage.getFriends(storage.findUserById(3)).size());
+        assertEquals(150, Long.parseLong(storage.findRevision(1)));
+    }
+}
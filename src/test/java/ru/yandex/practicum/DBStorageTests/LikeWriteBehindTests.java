@@ -0,0 +1,185 @@
+package ru.yandex.practicum.DBStorageTests;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.MPA;
+import ru.yandex.practicum.storage.film.FilmCache;
+import ru.yandex.practicum.storage.film.FilmDbStorage;
+import ru.yandex.practicum.storage.film.FilmStorage;
+import ru.yandex.practicum.storage.film.LikeWriteBehindBuffer;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.catchThrowable;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.flush-interval-ms=60000",
+        "filmorate.likes.write-behind.capacity=3"
+})
+@AutoConfigureTestDatabase
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class LikeWriteBehindTests {
+    private final FilmStorage storage;
+    private final LikeWriteBehindBuffer buffer;
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmCache filmCache;
+    private final MockMvc mockMvc;
+
+    @Autowired
+    public LikeWriteBehindTests(FilmStorage storage, LikeWriteBehindBuffer buffer, JdbcTemplate jdbcTemplate,
+                                FilmCache filmCache, MockMvc mockMvc) {
+        this.storage = storage;
+        this.buffer = buffer;
+        this.jdbcTemplate = jdbcTemplate;
+        this.filmCache = filmCache;
+        this.mockMvc = mockMvc;
+    }
+
+    @BeforeEach
+    public void createTestData() {
+        Film film = new Film();
+        film.setName("Terminator");
+        film.setDescription("Full termination");
+        film.setReleaseDate(LocalDate.of(2023, 5, 5));
+        film.setDuration(90);
+        film.setMpa(new MPA(5, "NC-17"));
+        storage.add(film);
+        for (int id = 1; id <= 5; id++) {
+            jdbcTemplate.update("INSERT INTO USERS(USER_ID, USER_EMAIL, USER_LOGIN, USER_NAME, BIRTHDAY) " +
+                    "values (?, '1@1.com', 'lgn', 'nm', '1978-10-10')", id);
+        }
+    }
+
+    @Test
+    public void likeVisibleBeforeFlushTest() {
+        storage.putLike(storage.findFilmById(1), 1);
+
+        assertEquals(0, countLikes());
+        assertTrue(storage.findFilmById(1).getLikes().contains(1));
+        assertEquals(1, storage.findBest(1).get(0).getLikes().size());
+
+        buffer.flush();
+
+        assertEquals(1, countLikes());
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT LIKES_COUNT FROM FILMS WHERE FILM_ID = 1", Integer.class));
+    }
+
+    @Test
+    public void verifyPopularityIndexKeepsPendingLikesTest() {
+        storage.putLike(storage.findFilmById(1), 1);
+
+        assertEquals(0, ((FilmDbStorage) storage).verifyPopularityIndex());
+        assertEquals(1, countLikes());
+        assertEquals(1, storage.findBest(1).get(0).getLikes().size());
+    }
+
+    @Test
+    public void flushedLikeVisibleToEarlierReadTest() {
+        Film readBeforeFlush = storage.findFilmById(1);
+        storage.putLike(storage.findFilmById(1), 1);
+        buffer.flush();
+
+        assertTrue(buffer.applyPending(readBeforeFlush).getLikes().contains(1));
+        assertTrue(storage.findFilmById(1).getLikes().contains(1));
+    }
+
+    @Test
+    public void flushInvalidatesCachedFilmTest() {
+        Film withoutLike = storage.findFilmById(1);
+        storage.putLike(storage.findFilmById(1), 1);
+        filmCache.put(withoutLike, filmCache.stamp());
+        buffer.flush();
+
+        assertNull(filmCache.get(1));
+        assertTrue(storage.findFilmById(1).getLikes().contains(1));
+    }
+
+    @Test
+    public void notModifiedAfterFlushTest() throws Exception {
+        storage.putLike(storage.findFilmById(1), 1);
+        mockMvc.perform(get("/films/1")).andExpect(status().isOk());
+        buffer.flush();
+        String eTag = mockMvc.perform(get("/films/1")).andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/films/1").header("If-None-Match", eTag)).andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void failedFlushKeepsLikesTest() {
+        storage.putLike(storage.findFilmById(1), 1);
+        jdbcTemplate.execute("ALTER TABLE LIKES RENAME TO LIKES_OFFLINE");
+        Throwable thrown = catchThrowable(buffer::flush);
+        jdbcTemplate.execute("ALTER TABLE LIKES_OFFLINE RENAME TO LIKES");
+
+        assertThat(thrown).isInstanceOf(DataAccessException.class);
+        assertEquals(1, buffer.size());
+        assertTrue(storage.findFilmById(1).getLikes().contains(1));
+
+        storage.putLike(storage.findFilmById(1), 2);
+        buffer.flush();
+
+        assertEquals(2, countLikes());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void flushDropsOnlyViolatingLikeTest() {
+        storage.putLike(storage.findFilmById(1), 1);
+        buffer.enqueue(1, 99, true);
+        buffer.flush();
+
+        assertEquals(1, countLikes());
+        assertEquals(0, buffer.size());
+        assertEquals(1, storage.findFilmById(1).getLikes().size());
+    }
+
+    @Test
+    public void likeAndUnlikeCancelOutTest() {
+        storage.putLike(storage.findFilmById(1), 1);
+        storage.deleteLike(1, 1);
+
+        assertEquals(0, buffer.size());
+        assertTrue(storage.findFilmById(1).getLikes().isEmpty());
+    }
+
+    @Test
+    public void duplicateLikeErrorTest() {
+        storage.putLike(storage.findFilmById(1), 1);
+        Throwable thrown = catchThrowable(() -> storage.putLike(storage.findFilmById(1), 1));
+
+        assertThat(thrown).isInstanceOf(RuntimeException.class);
+        assertThat(thrown.getMessage()).isEqualTo("Ошибка добавления лайка");
+    }
+
+    @Test
+    public void fullBufferFlushedByCallerTest() {
+        for (int id = 1; id <= 4; id++) {
+            storage.putLike(storage.findFilmById(1), id);
+        }
+
+        assertEquals(3, countLikes());
+        assertEquals(1, buffer.size());
+        assertEquals(4, storage.findFilmById(1).getLikes().size());
+    }
+
+    private int countLikes() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM LIKES", Integer.class);
+    }
+}
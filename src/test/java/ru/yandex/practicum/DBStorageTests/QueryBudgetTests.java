@@ -0,0 +1,131 @@
+package ru.yandex.practicum.DBStorageTests;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.Genre;
+import ru.yandex.practicum.model.MPA;
+import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.monitoring.SqlStatistics;
+import ru.yandex.practicum.storage.film.FilmStorage;
+import ru.yandex.practicum.storage.user.UserStorage;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.yandex.practicum.DBStorageTests.SqlAssertions.assertStatementsAtMost;
+
+@SpringBootTest(properties = "filmorate.sql.debug-headers=true")
+@AutoConfigureTestDatabase
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class QueryBudgetTests {
+    private final MockMvc mockMvc;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+
+    public QueryBudgetTests(@Autowired MockMvc mockMvc,
+                            @Qualifier("filmDbStorage") FilmStorage filmStorage,
+                            @Qualifier("userDbStorage") UserStorage userStorage) {
+        this.mockMvc = mockMvc;
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+    }
+
+    @BeforeEach
+    public void createFilms() {
+        for (int i = 1; i <= 5; i++) {
+            User user = new User();
+            user.setLogin("user" + i);
+            user.setEmail("user" + i + "@mail.ru");
+            user.setBirthday(LocalDate.of(1990, 1, i));
+            userStorage.create(user);
+
+            Film film = new Film();
+            film.setName("Film " + i);
+            film.setDescription("Description " + i);
+            film.setReleaseDate(LocalDate.of(2000, 1, i));
+            film.setDuration(90);
+            film.setMpa(new MPA(1 + i % 5, null));
+            film.getGenres().add(new Genre(1 + i % 6, null));
+            filmStorage.putLike(filmStorage.add(film), user.getId());
+        }
+    }
+
+    @Test
+    public void getFilmsStatementBudgetTest() throws Throwable {
+        assertStatementsAtMost(4, () -> mockMvc.perform(get("/films")).andExpect(status().isOk()));
+    }
+
+    @Test
+    public void filterFilmsStatementBudgetTest() throws Throwable {
+        assertStatementsAtMost(4, () -> mockMvc.perform(
+                get("/films?genre=2&mpa=2,3&yearFrom=2000&yearTo=2000&maxDuration=120"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(1)));
+    }
+
+    @Test
+    public void getUsersStatementBudgetTest() throws Throwable {
+        userStorage.addFriend(userStorage.findUserById(1), userStorage.findUserById(2));
+        userStorage.addFriend(userStorage.findUserById(1), userStorage.findUserById(3));
+
+        assertStatementsAtMost(1, () -> mockMvc.perform(get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5))
+                .andExpect(jsonPath("$[0].friends.length()").value(2)));
+    }
+
+    @Test
+    public void getFilmNotModifiedStatementBudgetTest() throws Throwable {
+        String eTag = mockMvc.perform(get("/films/1")).andReturn().getResponse().getHeader("ETag");
+
+        assertStatementsAtMost(1, () -> mockMvc.perform(get("/films/1").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified()));
+    }
+
+    @Test
+    public void searchStatementBudgetTest() throws Throwable {
+        assertStatementsAtMost(4, () -> mockMvc.perform(get("/films/search?q=film 3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5))
+                .andExpect(jsonPath("$[0].id").value(3)));
+    }
+
+    @Test
+    public void getFriendsStatementBudgetTest() throws Throwable {
+        User user = userStorage.findUserById(1);
+        for (int i = 2; i <= 5; i++) {
+            userStorage.addFriend(user, userStorage.findUserById(i));
+        }
+
+        assertStatementsAtMost(2, () -> mockMvc.perform(get("/users/1/friends")).andExpect(status().isOk()));
+        assertStatementsAtMost(2, () -> mockMvc.perform(get("/users/1/friends?after=2&limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "4")));
+        assertStatementsAtMost(3, () -> mockMvc.perform(get("/users/1/friends/common/2"))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    public void statementsHeaderTest() throws Throwable {
+        SqlStatistics statistics = assertStatementsAtMost(4, () -> mockMvc.perform(get("/films"))
+                .andExpect(header().exists("X-Sql-Statements"))
+                .andExpect(header().exists("X-Sql-Time-Ms")));
+
+        String header = mockMvc.perform(get("/films")).andReturn().getResponse().getHeader("X-Sql-Statements");
+        assertEquals(String.valueOf(statistics.getStatements()), header);
+    }
+}
@@ -0,0 +1,291 @@
+package ru.yandex.practicum.DBStorageTests;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.model.Film;
+import ru.yandex.practicum.model.FilmFilter;
+import ru.yandex.practicum.model.MPA;
+import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.storage.film.FilmDbStorage;
+import ru.yandex.practicum.storage.genre.GenreStorage;
+import ru.yandex.practicum.storage.mpa.MPAStorage;
+import ru.yandex.practicum.storage.user.UserDbStorage;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка планов запросов хранилищ.
+ * Все запросы, выполненные хранилищами, перехватываются вместе с параметрами
+ * и повторяются через EXPLAIN. Тест падает, если запрос с условием WHERE
+ * или присоединяемая таблица читаются полным просмотром.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class QueryPlanTests {
+    private static final Pattern TABLE_ACCESS = Pattern.compile("/\\* PUBLIC\\.([A-Z_0-9]+)(\\.tableScan)?");
+    private static final Pattern WHERE = Pattern.compile("\\bWHERE\\b", Pattern.CASE_INSENSITIVE);
+    /**
+     * Запросы, которым полный просмотр нужен по смыслу: сверка всех счётчиков лайков
+     */
+    private static final Set<String> FULL_SCAN_ALLOWED = Set.of(
+            "UPDATE FILMS F SET LIKES_COUNT = (SELECT COUNT(*) FROM LIKES L WHERE L.FILM_ID = F.FILM_ID) " +
+                    "WHERE LIKES_COUNT <> (SELECT COUNT(*) FROM LIKES L WHERE L.FILM_ID = F.FILM_ID)");
+
+    private final FilmDbStorage filmStorage;
+    private final UserDbStorage userStorage;
+    private final GenreStorage genreStorage;
+    private final MPAStorage mpaStorage;
+    private final DataSource dataSource;
+
+    public QueryPlanTests(@Autowired FilmDbStorage filmStorage, @Autowired UserDbStorage userStorage,
+                          @Autowired GenreStorage genreStorage, @Autowired MPAStorage mpaStorage,
+                          @Autowired DataSource dataSource) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.dataSource = dataSource;
+    }
+
+    @Test
+    public void storageQueriesUseIndexesTest() throws SQLException {
+        StatementRecorder.start();
+        exerciseStorages();
+        Map<String, Object[]> statements = StatementRecorder.stop();
+
+        assertFalse(statements.isEmpty());
+        List<String> failures = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            for (Map.Entry<String, Object[]> statement : statements.entrySet()) {
+                String sql = statement.getKey();
+                if (!isExplainable(sql) || FULL_SCAN_ALLOWED.contains(sql)) {
+                    continue;
+                }
+                String plan = explain(connection, sql, statement.getValue());
+                String scanned = findTableScan(sql, plan);
+                if (scanned != null) {
+                    failures.add(String.format("%s: полный просмотр %s%n%s", sql, scanned, plan));
+                }
+            }
+        }
+        assertTrue(failures.isEmpty(), String.join("\n\n", failures));
+    }
+
+    private void exerciseStorages() {
+        User user = userStorage.create(giveUser("first"));
+        User friend = userStorage.create(giveUser("second"));
+        User other = userStorage.create(giveUser("third"));
+        userStorage.update(user);
+        userStorage.findAll();
+        userStorage.findPage(0, 10);
+        userStorage.streamAll(u -> { });
+        userStorage.findUserById(user.getId());
+        userStorage.findRevision(user.getId());
+        userStorage.addFriend(user, friend);
+        userStorage.addFriend(other, friend);
+        userStorage.getFriends(user);
+        userStorage.getFriendsPage(user, 0, 10);
+        userStorage.getCommonFriends(user, other);
+        userStorage.getSuggestions(other, 10);
+        userStorage.autocomplete(user.getLogin(), 10);
+        userStorage.deleteFriend(user, friend);
+
+        Film film = filmStorage.add(giveFilm());
+        filmStorage.addAll(List.of(giveFilm(), giveFilm()));
+        filmStorage.update(film);
+        filmStorage.findAll();
+        filmStorage.findPage(0, 10);
+        filmStorage.findByFilter(new FilmFilter(), 0, 10);
+        filmStorage.streamAll(f -> { });
+        filmStorage.findFilmById(film.getId());
+        filmStorage.findRevision(film.getId());
+        filmStorage.putLike(filmStorage.findFilmById(film.getId()), user.getId());
+        filmStorage.putLike(filmStorage.findFilmById(film.getId()), other.getId());
+        filmStorage.putLike(filmStorage.findFilmById(film.getId() + 1), other.getId());
+        filmStorage.findBest(10);
+        filmStorage.findRecommendations(user.getId(), 10);
+        filmStorage.findSimilar(film, 10);
+        filmStorage.search(film.getName(), 10);
+        filmStorage.autocomplete(film.getName(), 10);
+        filmStorage.findFilmsByIds(List.of(film.getId(), film.getId() + 1));
+        filmStorage.deleteLike(film.getId(), user.getId());
+        filmStorage.verifyPopularityIndex();
+        filmStorage.reconcileLikesCount();
+
+        genreStorage.getAll();
+        genreStorage.getById(1);
+        mpaStorage.getAll();
+        mpaStorage.getById(1);
+    }
+
+    private static User giveUser(String login) {
+        User user = new User();
+        user.setName(login);
+        user.setLogin(login);
+        user.setEmail(login + "@mail.ru");
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+
+    private static Film giveFilm() {
+        Film film = new Film();
+        film.setName("Film");
+        film.setDescription("Description");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        film.setMpa(new MPA(1, "G"));
+        return film;
+    }
+
+    private static boolean isExplainable(String sql) {
+        String statement = sql.trim().toUpperCase(Locale.ROOT);
+        return statement.startsWith("SELECT") || statement.startsWith("UPDATE") || statement.startsWith("DELETE");
+    }
+
+    private static String explain(Connection connection, String sql, Object[] params) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+
+    /**
+     * Поиск таблицы, читаемой полным просмотром. Запросу без WHERE разрешено
+     * полностью читать первую таблицу, но не присоединяемые к ней
+     */
+    private static String findTableScan(String sql, String plan) {
+        boolean filtered = WHERE.matcher(sql).find();
+        Matcher matcher = TABLE_ACCESS.matcher(plan);
+        boolean first = true;
+        while (matcher.find()) {
+            if (matcher.group(2) != null && (filtered || !first)) {
+                return matcher.group(1);
+            }
+            first = false;
+        }
+        return null;
+    }
+
+    @TestConfiguration
+    static class RecordingDataSourceConfiguration {
+        @Bean
+        static BeanPostProcessor recordingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource ? StatementRecorder.wrap((DataSource) bean) : bean;
+                }
+            };
+        }
+    }
+
+    /**
+     * Перехват SQL-запросов и последних значений их параметров
+     */
+    static class StatementRecorder {
+        private static volatile Map<String, Object[]> statements;
+
+        static void start() {
+            statements = new ConcurrentHashMap<>();
+        }
+
+        static Map<String, Object[]> stop() {
+            Map<String, Object[]> recorded = new TreeMap<>(statements);
+            statements = null;
+            return recorded;
+        }
+
+        static DataSource wrap(DataSource dataSource) {
+            return proxy(DataSource.class, dataSource, (method, args, result) ->
+                    "getConnection".equals(method) ? wrapConnection((Connection) result) : result);
+        }
+
+        private static Connection wrapConnection(Connection connection) {
+            return proxy(Connection.class, connection, (method, args, result) -> {
+                if ("prepareStatement".equals(method)) {
+                    return wrapPreparedStatement((PreparedStatement) result, (String) args[0]);
+                }
+                if ("createStatement".equals(method)) {
+                    return wrapStatement((Statement) result);
+                }
+                return result;
+            });
+        }
+
+        private static Statement wrapStatement(Statement statement) {
+            return proxy(Statement.class, statement, (method, args, result) -> {
+                if ((method.startsWith("execute") || "addBatch".equals(method))
+                        && args != null && args.length > 0 && args[0] instanceof String) {
+                    record((String) args[0], new Object[0]);
+                }
+                return result;
+            });
+        }
+
+        private static PreparedStatement wrapPreparedStatement(PreparedStatement statement, String sql) {
+            Map<Integer, Object> params = new TreeMap<>();
+            return proxy(PreparedStatement.class, statement, (method, args, result) -> {
+                if (method.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    params.put((Integer) args[0], args[1]);
+                } else if (method.startsWith("execute") || "addBatch".equals(method)) {
+                    record(sql, params.values().toArray());
+                }
+                return result;
+            });
+        }
+
+        private static void record(String sql, Object[] params) {
+            Map<String, Object[]> current = statements;
+            if (current != null) {
+                current.put(sql, params);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, T target, Interceptor interceptor) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+                try {
+                    return interceptor.after(method.getName(), args, method.invoke(target, args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+
+        private interface Interceptor {
+            Object after(String method, Object[] args, Object result) throws SQLException;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.DBStorageTests;
+
+import org.junit.jupiter.api.function.Executable;
+import ru.yandex.practicum.monitoring.SqlStatistics;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверки числа SQL-запросов, выполненных в текущем потоке
+ */
+public final class SqlAssertions {
+
+    private SqlAssertions() {
+    }
+
+    /**
+     * Выполнение действия с проверкой, что оно сделало не больше max SQL-запросов
+     */
+    public static SqlStatistics assertStatementsAtMost(int max, Executable action) throws Throwable {
+        SqlStatistics statistics = SqlStatistics.start();
+        try {
+            action.execute();
+        } finally {
+            statistics.stop();
+        }
+        assertTrue(statistics.getStatements() <= max,
+                String.format("Ожидалось не больше %d SQL-запросов, выполнено %d", max, statistics.getStatements()));
+        return statistics;
+    }
+}
@@ -0,0 +1,330 @@
+package ru.yandex.practicum.DBStorageTests;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import ru.yandex.practicum.exception.UserNotFoundException;
+import ru.yandex.practicum.model.User;
+import ru.yandex.practicum.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.catchThrowable;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Общие тесты хранилищ пользователей. Выполняются для каждой реализации UserStorage
+ */
+public abstract class UserStorageTests {
+    protected final UserStorage storage;
+
+    protected UserStorageTests(UserStorage storage) {
+        this.storage = storage;
+    }
+
+    @BeforeEach
+    public void createTestUser() {
+        storage.create(giveTwister());
+    }
+
+    public User giveTwister() {
+        User user = new User();
+        user.setName("Mister Abraham");
+        user.setLogin("Twister");
+        user.setEmail("twisted@twist.com");
+        user.setBirthday(LocalDate.of(1978, 10, 12));
+        return user;
+    }
+
+    public User giveJohnny() {
+        User user = new User();
+        user.setName("John Smith");
+        user.setLogin("johnny");
+        user.setEmail("js666@blabla.com");
+        user.setBirthday(LocalDate.of(1982, 06, 05));
+        return user;
+    }
+
+    public User giveTerminator() {
+        User user = new User();
+        user.setName("Sarah Connor");
+        user.setLogin("terminator");
+        user.setEmail("illbeback@boom.com");
+        user.setBirthday(LocalDate.of(1966, 11, 11));
+        return user;
+    }
+
+    @Test
+    public void createUserTest() {
+        User user = giveTerminator();
+        user.setName(null);
+        storage.create(user);
+        assertThat(user).isNotNull().hasFieldOrPropertyWithValue("id", 2).hasFieldOrPropertyWithValue("name", "terminator").hasFieldOrPropertyWithValue("email", "illbeback@boom.com");
+    }
+
+    @Test
+    public void updateUserTest() {
+        User user = giveTwister();
+        user.setId(1);
+        user.setName("Galileo");
+        user.setEmail("testing@email.com");
+        storage.update(user);
+        assertThat(storage.findUserById(1)).isNotNull().hasFieldOrPropertyWithValue("id", 1).hasFieldOrPropertyWithValue("name", "Galileo").hasFieldOrPropertyWithValue("email", "testing@email.com");
+    }
+
+    @Test
+    public void updateUserNotFoundTest() {
+        User user = giveTwister();
+        user.setId(10);
+        Throwable thrown = catchThrowable(() -> {
+            storage.update(user);
+        });
+        assertThat(thrown).isInstanceOf(UserNotFoundException.class);
+        assertThat(thrown.getMessage()).isEqualTo(String.format("Пользователя с id = %d не найдено", user.getId()));
+    }
+
+    @Test
+    public void getAllUsersTest() {
+        storage.create(giveJohnny());
+        storage.create(giveTerminator());
+        List<User> users = storage.findAll();
+
+        assertEquals(users.size(), 3);
+        assertThat(users.containsAll(List.of(giveTwister(), giveJohnny(), giveTerminator())));
+    }
+
+    @Test
+    public void testFindUserById() {
+        Optional<User> userOptional = Optional.ofNullable(storage.findUserById(1));
+
+        assertThat(userOptional).isPresent().hasValueSatisfying(user -> assertThat(user).hasFieldOrPropertyWithValue("id", 1).hasFieldOrPropertyWithValue("name", "Mister Abraham").hasFieldOrPropertyWithValue("email", "twisted@twist.com"));
+    }
+
+    @Test
+    public void testFindUserByWrongId() {
+        Throwable thrown = catchThrowable(() -> {
+            storage.findUserById(2);
+        });
+        assertThat(thrown).isInstanceOf(UserNotFoundException.class);
+        assertThat(thrown.getMessage()).isEqualTo("Пользователя с id = 2 не найдено");
+    }
+
+    @Test
+    public void addFriendTest() {
+        User user = storage.create(giveTwister());
+        User friend = storage.create(giveTerminator());
+        storage.addFriend(user, friend);
+        List<User> friendList = storage.getFriends(user);
+
+        assertEquals(1, friendList.size());
+        assertEquals(3, friendList.get(0).getId());
+    }
+
+    @Test
+    public void addAlreadyFriendTest() {
+        User user = storage.create(giveTwister());
+        User friend = storage.create(giveTerminator());
+        storage.addFriend(user, friend);
+
+        Throwable thrown = catchThrowable(() -> {
+            storage.addFriend(user, friend);
+        });
+        assertThat(thrown).isInstanceOf(InvalidDataAccessApiUsageException.class);
+        assertThat(thrown.getMessage()).contains("Заявка в друзья уже существует");
+    }
+
+    @Test
+    public void deleteFriendTest() {
+        User user = storage.create(giveTwister());
+        User friend = storage.create(giveTerminator());
+        storage.addFriend(user, friend);
+        storage.deleteFriend(user, friend);
+        List<User> friendList = storage.getFriends(user);
+
+        assertTrue(friendList.isEmpty());
+
+        Throwable thrown = catchThrowable(() -> {
+            storage.deleteFriend(user, friend);
+        });
+
+        assertThat(thrown).isInstanceOf(RuntimeException.class);
+        assertThat(thrown.getMessage()).contains("Ошибка удаления из друзей");
+    }
+
+    @Test
+    public void getFriendsTest() {
+        User user = storage.create(giveTwister());
+        User friend = storage.create(giveTerminator());
+        storage.addFriend(user, friend);
+        List<User> friendList = storage.getFriends(user);
+
+        assertThat(friendList.size()).isEqualTo(1);
+        assertThat(friendList.get(0)).hasFieldOrPropertyWithValue("id", 3).hasFieldOrPropertyWithValue("name", "Sarah Connor");
+    }
+
+    @Test
+    public void getCommonFriendsTest() {
+        User user = storage.create(giveTwister());
+        User friend = storage.create(giveTerminator());
+        storage.addFriend(user, storage.findUserById(1));
+        storage.addFriend(friend, storage.findUserById(1));
+        List<User> commonFriendList = storage.getCommonFriends(storage.findAll().get(1), friend);
+
+        assertThat(commonFriendList.size()).isEqualTo(1);
+        assertThat(commonFriendList.get(0)).hasFieldOrPropertyWithValue("id", 1).hasFieldOrPropertyWithValue("name", "Mister Abraham");
+    }
+
+    @Test
+    public void getFriendsPageTest() {
+        User user = storage.findUserById(1);
+        List<User> friends = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            friends.add(storage.create(giveJohnny()));
+        }
+        for (int i = friends.size() - 1; i >= 0; i--) {
+            storage.addFriend(user, friends.get(i));
+        }
+        List<User> firstPage = storage.getFriendsPage(user, 0, 2);
+        List<User> secondPage = storage.getFriendsPage(user, firstPage.get(1).getId(), 2);
+        List<User> lastPage = storage.getFriendsPage(user, 5, 2);
+
+        assertEquals(List.of(2, 3), firstPage.stream().map(User::getId).collect(Collectors.toList()));
+        assertEquals(List.of(4, 5), secondPage.stream().map(User::getId).collect(Collectors.toList()));
+        assertEquals(List.of(6), lastPage.stream().map(User::getId).collect(Collectors.toList()));
+        assertEquals("johnny", lastPage.get(0).getLogin());
+        assertEquals(List.of(2, 3, 4, 5, 6),
+                storage.getFriends(user).stream().map(User::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void getSuggestionsTest() {
+        List<User> users = new ArrayList<>();
+        users.add(storage.findUserById(1));
+        for (int i = 0; i < 5; i++) {
+            users.add(storage.create(giveJohnny()));
+        }
+        storage.addFriend(users.get(0), users.get(1));
+        storage.addFriend(users.get(0), users.get(2));
+        storage.addFriend(users.get(1), users.get(3));
+        storage.addFriend(users.get(1), users.get(4));
+        storage.addFriend(users.get(1), users.get(2));
+        storage.addFriend(users.get(2), users.get(3));
+        storage.addFriend(users.get(2), users.get(0));
+        List<User> suggestions = storage.getSuggestions(users.get(0), 10);
+
+        assertEquals(List.of(4, 5), suggestions.stream().map(User::getId).collect(Collectors.toList()));
+        assertEquals(1, storage.getSuggestions(users.get(0), 1).size());
+        assertTrue(storage.getSuggestions(users.get(5), 10).isEmpty());
+
+        storage.deleteFriend(users.get(2), users.get(3));
+
+        assertEquals(List.of(4, 5), storage.getSuggestions(users.get(0), 10).stream()
+                .map(User::getId).collect(Collectors.toList()));
+        storage.deleteFriend(users.get(1), users.get(3));
+
+        assertEquals(List.of(5), storage.getSuggestions(users.get(0), 10).stream()
+                .map(User::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void autocompleteTest() {
+        User terminator = storage.create(giveTerminator());
+        User johnny = storage.create(giveJohnny());
+        User tyoma = giveJohnny();
+        tyoma.setLogin("Тёма");
+        storage.create(tyoma);
+
+        assertEquals(List.of(1, 2), storage.autocomplete("t", 10).stream()
+                .map(User::getId).collect(Collectors.toList()));
+
+        storage.addFriend(johnny, terminator);
+
+        assertEquals(List.of(2, 1), storage.autocomplete("T", 10).stream()
+                .map(User::getId).collect(Collectors.toList()));
+        assertEquals(1, storage.autocomplete("t", 1).size());
+        assertEquals(1, storage.autocomplete("tw", 10).get(0).getId());
+        assertEquals(4, storage.autocomplete("тем", 10).get(0).getId());
+        assertTrue(storage.autocomplete("x", 10).isEmpty());
+
+        terminator.setLogin("arnold");
+        storage.update(terminator);
+
+        assertEquals(List.of(1), storage.autocomplete("t", 10).stream()
+                .map(User::getId).collect(Collectors.toList()));
+        assertEquals(2, storage.autocomplete("ARN", 10).get(0).getId());
+    }
+
+    @Test
+    public void findPageTest() {
+        User user = storage.create(giveJohnny());
+        User friend = storage.create(giveTerminator());
+        storage.addFriend(user, friend);
+        List<User> firstPage = storage.findPage(0, 2);
+        List<User> secondPage = storage.findPage(firstPage.get(1).getId(), 2);
+
+        assertEquals(2, firstPage.size());
+        assertEquals(1, firstPage.get(0).getId());
+        assertEquals(2, firstPage.get(1).getId());
+        assertTrue(firstPage.get(1).getFriends().containsKey(3));
+        assertEquals(1, secondPage.size());
+        assertEquals(3, secondPage.get(0).getId());
+    }
+
+    @Test
+    public void streamAllTest() {
+        User user = storage.create(giveJohnny());
+        storage.addFriend(user, storage.findUserById(1));
+        List<User> streamed = new ArrayList<>();
+        storage.streamAll(streamed::add);
+
+        assertEquals(2, streamed.size());
+        assertEquals(2, streamed.get(1).getId());
+        assertTrue(streamed.get(1).getFriends().containsKey(1));
+    }
+
+    @Test
+    public void concurrentCreateUniqueIdsTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<User>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(executor.submit(() -> storage.create(giveJohnny())));
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Future<User> future : futures) {
+            ids.add(future.get().getId());
+        }
+        executor.shutdown();
+
+        assertEquals(100, ids.size());
+        assertEquals(101, storage.findAll().size());
+    }
+
+    @Test
+    public void revisionTest() {
+        User user = storage.create(giveJohnny());
+        User friend = storage.create(giveTerminator());
+        String created = storage.findRevision(user.getId());
+
+        storage.addFriend(user, friend);
+        String befriended = storage.findRevision(user.getId());
+
+        assertNotEquals(created, befriended);
+        assertEquals(befriended, storage.getRevision(storage.findUserById(user.getId())));
+
+        storage.deleteFriend(user, friend);
+
+        assertNotEquals(befriended, storage.findRevision(user.getId()));
+    }
+}